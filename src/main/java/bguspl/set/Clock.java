@@ -0,0 +1,66 @@
+package bguspl.set;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The clock of the game. The system clock runs in real time; a scaled clock (used by the simulation) runs speed times
+ * faster than real time, and every wait of the game is shortened by the same factor, so the game plays the same in
+ * less time.
+ * <p>
+ * A scaled clock is not a virtual clock: its time is the wall time multiplied by speed, so any real latency (e.g. a
+ * thread that is scheduled late) is multiplied by speed as well. The time it reports depends on the load of the host.
+ */
+public class Clock {
+
+    /**
+     * The real time clock.
+     */
+    public static final Clock SYSTEM = new Clock(1);
+
+    /**
+     * How many times faster than real time the clock runs.
+     */
+    public final double speed;
+
+    /**
+     * The time of the clock when it was created, and the real time (System.nanoTime) it was created at.
+     */
+    private final long originMillis, originNanos;
+
+    /**
+     * @param speed - how many times faster than real time the clock runs.
+     */
+    public Clock(double speed) {
+        if (speed <= 0)
+            throw new IllegalArgumentException("the speed of a clock must be positive: " + speed);
+        this.speed = speed;
+        this.originMillis = System.currentTimeMillis();
+        this.originNanos = System.nanoTime();
+    }
+
+    /**
+     * @return - the current time of the clock (in milliseconds, as System.currentTimeMillis for the real time clock).
+     */
+    public long currentTimeMillis() {
+        if (speed == 1)
+            return System.currentTimeMillis();
+        return originMillis + (long) ((System.nanoTime() - originNanos) * speed / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * @param millis - a duration on the clock (in milliseconds).
+     * @return - the real duration (in nanoseconds) it takes.
+     */
+    public long toNanos(long millis) {
+        return (long) (TimeUnit.MILLISECONDS.toNanos(millis) / speed);
+    }
+
+    /**
+     * Sleeps for a duration on the clock.
+     *
+     * @param millis - the duration (in milliseconds).
+     */
+    public void sleep(long millis) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(toNanos(millis));
+    }
+}
@@ -36,6 +36,17 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The number of cards from which searching them for sets is split between the threads of the fork/join pool
+     * (0 to always search on the calling thread)
+     */
+    public final int parallelSearchThreshold;
+
+    /**
+     * The seed for shuffling and drawing the cards of the deck (null for a different order in every game)
+     */
+    public final Long deckSeed;
+
     /**
      * The number of human players in the game.
      */
@@ -51,6 +62,27 @@ public class Config {
      */
     public final int players;
 
+    /**
+     * True iff the players' threads (and the computer players' input threads) are virtual threads (Java 21+)
+     */
+    public final boolean virtualThreads;
+
+    /**
+     * True iff the players post their key presses to the dealer, which applies all the changes to the table alone
+     */
+    public final boolean actorDealer;
+
+    /**
+     * True iff each player checks his set against the table before claiming it, and is penalized without the dealer if
+     * it is not a legal set (the dealer still checks every claim)
+     */
+    public final boolean preValidateClaims;
+
+    /**
+     * What to do with a key press when the player's key presses buffer is full: DROP_NEWEST, DROP_OLDEST or COALESCE_TOGGLES
+     */
+    public final String keyPressOverflow;
+
     /**
      * Whether to print out hints to the console or not
      */
@@ -155,7 +187,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -197,11 +229,24 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        parallelSearchThreshold = Integer.parseInt(properties.getProperty("ParallelSearchThreshold", "500"));
+        String seed = properties.getProperty("DeckSeed", "").trim();
+        deckSeed = seed.isEmpty() ? null : Long.parseLong(seed);
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
+        String threadingModel = properties.getProperty("ThreadingModel", "platform").trim();
+        virtualThreads = threadingModel.equalsIgnoreCase("virtual");
+        if (!virtualThreads && !threadingModel.equalsIgnoreCase("platform"))
+            logger.severe("invalid threading model: " + threadingModel + ", using platform threads");
+        String executionModel = properties.getProperty("ExecutionModel", "shared").trim();
+        actorDealer = executionModel.equalsIgnoreCase("actor");
+        if (!actorDealer && !executionModel.equalsIgnoreCase("shared"))
+            logger.severe("invalid execution model: " + executionModel + ", using the shared model");
+        preValidateClaims = Boolean.parseBoolean(properties.getProperty("PreValidateClaims", "False"));
+        keyPressOverflow = properties.getProperty("KeyPressOverflow", "DROP_NEWEST").trim();
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
@@ -8,11 +8,17 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final Clock clock;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, Clock.SYSTEM);
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Clock clock) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.clock = clock;
     }
 }
@@ -0,0 +1,200 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Searches for sets on several threads of the common fork/join pool. The range of the first card of a set is cut into
+ * chunks of about the same amount of work, each chunk is searched by its own task, and the sets of each chunk are
+ * passed to the sink as soon as the chunk and all the chunks before it are done, so the sets come out in the same
+ * order as in the sequential search.
+ * Once the chunks up to some chunk are known to hold count sets, the chunks after it cannot contribute anything, so
+ * their tasks stop (or skip their search if they did not start yet). All the tasks stop the same way once the sink
+ * asks for no more sets.
+ */
+class ParallelSetSearch {
+
+    /**
+     * The number of chunks per thread of the pool, more chunks balance the work better.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final UtilImpl util;
+    private final int setSize;
+    private final int[] cards;
+    private final int[] position;
+    private final int count;
+
+    /**
+     * The index shared by the chunks' backtracking searches (when setSize > 3), null otherwise.
+     */
+    private final SetBacktrackingSearch backtracking;
+
+    /**
+     * The first index of each chunk, and one past the last index of the last chunk.
+     */
+    private final int[] bounds;
+
+    /**
+     * The sets found in each chunk, in order.
+     */
+    private final List<List<int[]>> results;
+
+    /**
+     * The number of sets found so far in each chunk (a lower bound of the chunk's total until it finishes).
+     */
+    private final AtomicIntegerArray found;
+
+    /**
+     * The chunks after this one are not needed (the chunks up to it hold at least count sets).
+     */
+    private volatile int cutoff;
+
+    /**
+     * Set once the sink needs no more sets (it returned false, or it got count sets).
+     */
+    private final AtomicBoolean stop;
+
+    /**
+     * @param util        - the util object (to test sets and complete pairs).
+     * @param parallelism - the number of threads the search can use.
+     * @param setSize  - the number of cards in a set.
+     * @param cards    - the cards to search in.
+     * @param position - the position of each card in cards (-1 if it is not there) for completion, null otherwise.
+     * @param count    - the maximum number of sets to find.
+     */
+    ParallelSetSearch(UtilImpl util, int parallelism, int setSize, int[] cards, int[] position, int count) {
+        this.util = util;
+        this.setSize = setSize;
+        this.cards = cards;
+        this.position = position;
+        this.count = Math.max(count, 1);
+        this.backtracking = setSize > 3 ? new SetBacktrackingSearch(util, util.featureCount(), setSize, cards, cards.length) : null;
+        this.bounds = chunkBounds(cards.length, setSize, parallelism * CHUNKS_PER_THREAD);
+        int chunks = bounds.length - 1;
+        this.results = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; ++i)
+            results.add(new ArrayList<>());
+        this.found = new AtomicIntegerArray(chunks);
+        this.cutoff = chunks;
+        this.stop = new AtomicBoolean();
+    }
+
+    /**
+     * Cuts the indices of the first card into chunks of about the same number of combinations: about
+     * (n - 1 - i) ^ (setSize - 1) combinations start with the card at index i.
+     */
+    private static int[] chunkBounds(int n, int setSize, int chunks) {
+        int fence = Math.max(n - setSize + 1, 0);
+        chunks = Math.max(1, Math.min(chunks, fence));
+        double[] work = new double[fence + 1];
+        for (int i = 0; i < fence; ++i)
+            work[i + 1] = work[i] + Math.pow(n - 1 - i, setSize - 1);
+
+        int[] bounds = new int[chunks + 1];
+        for (int c = 1, i = 0; c < chunks; ++c) {
+            double target = work[fence] * c / chunks;
+            while (i < fence && work[i] < target) ++i;
+            bounds[c] = Math.max(i, bounds[c - 1]);
+        }
+        bounds[chunks] = fence;
+        return bounds;
+    }
+
+    /**
+     * Runs the search and passes the sets to the sink, in order, on the calling thread. Returns only after all the
+     * tasks are done.
+     *
+     * @return - the number of sets passed to the sink.
+     */
+    int run(Util.SetSink sink) {
+        ChunkTask[] tasks = new ChunkTask[bounds.length - 1];
+        for (int chunk = 0; chunk < tasks.length; ++chunk)
+            tasks[chunk] = new ChunkTask(chunk);
+        for (ChunkTask task : tasks)
+            task.fork();
+
+        int passed = 0;
+        try {
+            for (int chunk = 0; chunk < tasks.length; ++chunk) {
+                tasks[chunk].join();
+                for (int[] set : results.get(chunk)) {
+                    ++passed;
+                    if (!sink.accept(set) || passed >= count) return passed;
+                }
+            }
+            return passed;
+        } finally {
+            // the tasks that are still running stop at their next check, the others skip their search
+            stop.set(true);
+            for (ChunkTask task : tasks)
+                task.quietlyJoin();
+        }
+    }
+
+    /**
+     * @return - true iff the chunk's search is still needed.
+     */
+    private boolean needed(int chunk) {
+        return chunk <= cutoff && !stop.get();
+    }
+
+    private void searchChunk(int chunk) {
+        List<int[]> sets = results.get(chunk);
+        if (backtracking != null) {
+            new SetBacktrackingSearch(backtracking).findSets(bounds[chunk], bounds[chunk + 1], count, set -> {
+                sets.add(set.clone());
+                found.incrementAndGet(chunk);
+                return needed(chunk);
+            });
+            updateCutoff();
+            return;
+        }
+        for (int first = bounds[chunk]; first < bounds[chunk + 1] && needed(chunk); ++first) {
+            SetSpliterator spliterator = new SetSpliterator(util, setSize, cards, position, first, first + 1);
+            while (needed(chunk) && sets.size() < count && spliterator.tryAdvance(sets::add))
+                found.incrementAndGet(chunk);
+            if (sets.size() >= count) break;
+        }
+        updateCutoff();
+    }
+
+    /**
+     * Moves the cutoff to the first chunk such that the chunks up to it already hold count sets.
+     */
+    private void updateCutoff() {
+        int sum = 0;
+        for (int chunk = 0; chunk < cutoff; ++chunk) {
+            sum += found.get(chunk);
+            if (sum >= count) {
+                synchronized (this) {
+                    if (chunk < cutoff) cutoff = chunk;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Searches one chunk.
+     */
+    private class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int chunk;
+
+        ChunkTask(int chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (needed(chunk))
+                searchChunk(chunk);
+        }
+    }
+}
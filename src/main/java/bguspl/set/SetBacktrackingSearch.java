@@ -0,0 +1,197 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * Searches for sets of any size by backtracking: the cards of a set are chosen one by one (in the order of the
+ * cards array), and after each choice the cards that can still extend the selection are narrowed feature by
+ * feature. Once two cards are chosen, a feature whose values are equal so far must keep that value, and a feature
+ * whose values are different so far must take a value not used yet. The cards having each value of each feature
+ * are indexed as bitsets of positions, so narrowing is a few AND operations per feature.
+ * The sets are found in the same order as the combination search (lexicographic order of positions).
+ */
+class SetBacktrackingSearch {
+
+    private final UtilImpl util;
+    private final int featureCount;
+    private final int featureSize;
+
+    /**
+     * The number of cards in a set.
+     */
+    private final int setSize;
+
+    private final int[] cards;
+    private final int words;
+
+    /**
+     * The positions (as a bitset) of the cards that have value v in feature f, at [f * featureSize + v].
+     * Shared by the searches created from the same index.
+     */
+    private final long[][] withValue;
+
+    /**
+     * The positions of all the cards.
+     */
+    private final long[] all;
+
+    /**
+     * The cards chosen so far.
+     */
+    private final int[] chosen;
+
+    /**
+     * The positions that may extend the selection at each depth.
+     */
+    private final long[][] candidates;
+
+    private final int[] set;
+    private Util.SetSink sink;
+    private int count;
+    private int found;
+    private boolean stopped;
+
+    /**
+     * Indexes the cards for a search.
+     *
+     * @param util         - the util object (for the card features).
+     * @param featureCount - the number of features on the cards.
+     * @param featureSize  - the number of values of each feature, which is also the number of cards in a set.
+     * @param cards        - the cards to search in (copied).
+     * @param len          - the number of cards to search, starting from cards[0].
+     */
+    SetBacktrackingSearch(UtilImpl util, int featureCount, int featureSize, int[] cards, int len) {
+        this.util = util;
+        this.featureCount = featureCount;
+        this.featureSize = featureSize;
+        this.setSize = featureSize;
+        this.cards = Arrays.copyOf(cards, len);
+        this.words = (len + Long.SIZE - 1) / Long.SIZE;
+        this.withValue = new long[featureCount * featureSize][words];
+        for (int p = 0; p < len; ++p)
+            for (int f = 0; f < featureCount; ++f)
+                withValue[f * featureSize + util.featureValue(cards[p], f)][p / Long.SIZE] |= 1L << p;
+        this.all = new long[words];
+        for (int p = 0; p < len; ++p)
+            all[p / Long.SIZE] |= 1L << p;
+        this.chosen = new int[setSize];
+        this.candidates = new long[setSize][words];
+        this.set = new int[setSize];
+    }
+
+    /**
+     * Creates a search that shares the index of another one, so both can run at the same time.
+     */
+    SetBacktrackingSearch(SetBacktrackingSearch other) {
+        this.util = other.util;
+        this.featureCount = other.featureCount;
+        this.featureSize = other.featureSize;
+        this.setSize = other.setSize;
+        this.cards = other.cards;
+        this.words = other.words;
+        this.withValue = other.withValue;
+        this.all = other.all;
+        this.chosen = new int[setSize];
+        this.candidates = new long[setSize][words];
+        this.set = new int[setSize];
+    }
+
+    /**
+     * Finds up to count sets whose first card has a position in [from, to), and passes them to the sink in order.
+     *
+     * @return - the number of sets found (and passed to the sink).
+     */
+    int findSets(int from, int to, int count, Util.SetSink sink) {
+        to = Math.min(to, cards.length);
+        long[] first = candidates[0];
+        Arrays.fill(first, 0);
+        for (int p = from; p < to; ++p)
+            first[p / Long.SIZE] |= 1L << p;
+        return search(0, count, sink);
+    }
+
+    /**
+     * Finds all the sets that contain a given card and other cards, and passes them to the sink.
+     *
+     * @return - the number of sets found (and passed to the sink).
+     */
+    int findSetsWith(int card, Util.SetSink sink) {
+        chosen[0] = card;
+        long[] others = candidates[1];
+        Arrays.fill(others, 0);
+        for (int p = 0; p < cards.length; ++p)
+            if (cards[p] != card)
+                others[p / Long.SIZE] |= 1L << p;
+        return search(1, Integer.MAX_VALUE, sink);
+    }
+
+    private int search(int depth, int count, Util.SetSink sink) {
+        this.sink = sink;
+        this.count = count;
+        this.found = 0;
+        this.stopped = false;
+        extend(depth);
+        this.sink = null;
+        return found;
+    }
+
+    /**
+     * Tries each candidate in turn as the card at the given depth, and extends the selection with it.
+     */
+    private void extend(int depth) {
+        long[] positions = candidates[depth];
+        for (int w = 0; w < words && !stopped; ++w)
+            for (long bits = positions[w]; bits != 0 && !stopped; bits &= bits - 1) {
+                int p = w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                chosen[depth] = cards[p];
+                if (depth == setSize - 1)
+                    emit();
+                else if (narrow(depth, p) >= setSize - depth - 1)
+                    extend(depth + 1);
+            }
+    }
+
+    /**
+     * Computes the candidates for the next depth: the cards after position p (that are also candidates at this
+     * depth, unless it is the first card) that keep every feature all-same or all-different together with the
+     * cards chosen up to this depth.
+     *
+     * @return - the number of candidates for the next depth.
+     */
+    private int narrow(int depth, int p) {
+        // the range of the first card does not restrict the cards after it
+        long[] current = depth == 0 ? all : candidates[depth], next = candidates[depth + 1];
+        int firstWord = p / Long.SIZE;
+        Arrays.fill(next, 0, firstWord, 0);
+        next[firstWord] = current[firstWord] & (-2L << (p % Long.SIZE));
+        System.arraycopy(current, firstWord + 1, next, firstWord + 1, words - firstWord - 1);
+
+        if (depth >= 1) // a single card does not constrain the next one
+            for (int f = 0; f < featureCount; ++f) {
+                int first = util.featureValue(chosen[0], f);
+                if (first == util.featureValue(chosen[1], f)) {
+                    long[] same = withValue[f * featureSize + first];
+                    for (int w = firstWord; w < words; ++w)
+                        next[w] &= same[w];
+                } else
+                    for (int i = 0; i <= depth; ++i) {
+                        long[] used = withValue[f * featureSize + util.featureValue(chosen[i], f)];
+                        for (int w = firstWord; w < words; ++w)
+                            next[w] &= ~used[w];
+                    }
+            }
+
+        int left = 0;
+        for (int w = firstWord; w < words; ++w)
+            left += Long.bitCount(next[w]);
+        return left;
+    }
+
+    private void emit() {
+        System.arraycopy(chosen, 0, set, 0, setSize);
+        Arrays.sort(set);
+        ++found;
+        if (!sink.accept(set) || found >= count)
+            stopped = true;
+    }
+}
@@ -0,0 +1,179 @@
+package bguspl.set;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A lazy view over the sets in an array of cards: each set is only searched for when it is requested, so a stream
+ * built on it stops searching as soon as it is short-circuited (limit, anyMatch, findFirst etc.).
+ * The sets are encountered in the same order findSets returns them, and the spliterator splits by the index of the
+ * first card of a set, so it can be consumed in parallel. Sets of more than three cards are searched by backtracking,
+ * one first card at a time.
+ */
+class SetSpliterator implements Spliterator<int[]> {
+
+    private final UtilImpl util;
+
+    /**
+     * The cards to search in (a private copy).
+     */
+    private final int[] cards;
+
+    /**
+     * The position of each card in cards (-1 if it is not there), shared by all the splits. Only used for
+     * completion (setSize == 3), null otherwise.
+     */
+    private final int[] position;
+
+    /**
+     * The backtracking search over cards (setSize > 3), null otherwise. Each split has its own search, sharing the
+     * index of the cards.
+     */
+    private final SetBacktrackingSearch backtracking;
+
+    /**
+     * The sets found by the backtracking search and not yet passed on, all with the same first card.
+     */
+    private final ArrayDeque<int[]> pending;
+
+    /**
+     * The number of cards in a set.
+     */
+    private final int setSize;
+
+    /**
+     * The indices of the next combination of cards to test (combination[0] is the index of the first card). The
+     * backtracking search only uses combination[0], the index of the next first card to search from.
+     */
+    private final int[] combination;
+
+    /**
+     * One past the last index of the first card this spliterator covers.
+     */
+    private int fence;
+
+    SetSpliterator(UtilImpl util, int setSize, int[] cards, int[] position) {
+        this(util, setSize, cards, position, 0, cards.length);
+    }
+
+    /**
+     * Creates a spliterator over the sets whose first card (in the order of cards) has an index in [from, to).
+     */
+    SetSpliterator(UtilImpl util, int setSize, int[] cards, int[] position, int from, int to) {
+        this(util, setSize, cards, position,
+                setSize > 3 ? new SetBacktrackingSearch(util, util.featureCount(), setSize, cards, cards.length) : null,
+                firstCombination(setSize, from), Math.min(to, cards.length - setSize + 1));
+    }
+
+    private SetSpliterator(UtilImpl util, int setSize, int[] cards, int[] position, SetBacktrackingSearch backtracking,
+                           int[] combination, int fence) {
+        this.util = util;
+        this.setSize = setSize;
+        this.cards = cards;
+        this.position = position;
+        this.backtracking = backtracking;
+        this.pending = new ArrayDeque<>();
+        this.combination = combination;
+        this.fence = fence;
+    }
+
+    private static int[] firstCombination(int setSize, int first) {
+        int[] combination = new int[setSize];
+        for (int i = 0; i < setSize; ++i)
+            combination[i] = first + i;
+        return combination;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super int[]> action) {
+        int[] set = setSize == 3 ? nextByCompletion() : backtracking != null ? nextByBacktracking() : nextByCombination();
+        if (set == null) return false;
+        action.accept(set);
+        return true;
+    }
+
+    /**
+     * Finds the next set by completing pairs of cards (see UtilImpl.findSetsByCompletion).
+     */
+    private int[] nextByCompletion() {
+        int n = cards.length;
+        while (combination[0] < fence) {
+            int i = combination[0], j = combination[1];
+            if (j >= n - 1) {
+                combination[0] = i + 1;
+                combination[1] = i + 2;
+                continue;
+            }
+            combination[1] = j + 1;
+            int k = position[util.thirdCard(cards[i], cards[j])];
+            if (k > j) {
+                int[] set = {cards[i], cards[j], cards[k]};
+                Arrays.sort(set);
+                return set;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the next set by backtracking (see SetBacktrackingSearch), one first card at a time: the sets that start
+     * with a card are all found together, and the search moves on to the next first card only when they run out.
+     */
+    private int[] nextByBacktracking() {
+        while (pending.isEmpty() && combination[0] < fence) {
+            backtracking.findSets(combination[0], combination[0] + 1, Integer.MAX_VALUE, set -> pending.add(set.clone()));
+            combination[0]++;
+        }
+        return pending.poll();
+    }
+
+    /**
+     * Finds the next set by testing the combinations of cards in lexicographic order.
+     */
+    private int[] nextByCombination() {
+        int n = cards.length, r = setSize;
+        int[] set = new int[r];
+        while (r > 0 && combination[0] < fence && combination[r - 1] < n) {
+            for (int i = 0; i < r; ++i)
+                set[i] = cards[combination[i]];
+
+            // generate next combination in lexicographic order
+            int t = r - 1;
+            while (t != 0 && combination[t] == n - r + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+
+            Arrays.sort(set);
+            if (util.testSet(set)) return set;
+        }
+        return null;
+    }
+
+    @Override
+    public Spliterator<int[]> trySplit() {
+        // the prefix keeps the search state, this spliterator continues from the middle of the remaining range
+        int first = combination[0];
+        int mid = (first + 1 + fence) >>> 1;
+        if (mid <= first + 1 || mid >= fence) return null;
+        SetSpliterator prefix = new SetSpliterator(util, setSize, cards, position,
+                backtracking != null ? new SetBacktrackingSearch(backtracking) : null, combination.clone(), mid);
+        prefix.pending.addAll(pending); // the sets found so far come before the rest of the prefix
+        pending.clear();
+        System.arraycopy(firstCombination(setSize, mid), 0, combination, 0, setSize);
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        // the number of sets left is unknown until they are searched, the number of first cards left is a good
+        // enough estimate to balance the splits
+        return Math.max(0, fence - combination[0]);
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+}
@@ -0,0 +1,177 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Runs complete games with computer players only, without a user interface and on a clock that runs faster than real
+ * time, and reports how fast they ran and how they ended. Used to tune the game settings (e.g. the freeze times).
+ * The settings are read from config.properties, except that all the players are computer players, the table delay and
+ * the end of game pause are 0, and nothing is logged.
+ * <p>
+ * The game's clock is not a virtual clock: it is the wall time scaled by the clock speed (see Clock). Every real delay
+ * of the host (thread scheduling, wakeup latency, load from the other games) is scaled by the same factor, so the game
+ * lengths reported depend on the host and on the execution model, and are comparable only between runs on the same
+ * host under the same load, and a run cannot be repeated from a seed (DeckSeed fixes the shuffle, not the timing of
+ * the players). The report also shows the speed-up actually achieved: the game time played per real second, per game
+ * running at a time and over all the games.
+ * <p>
+ * Usage: Simulation [games [parallel games [clock speed]]] (by default 100 games, one at a time, at 1000 times real
+ * time).
+ */
+public class Simulation {
+
+    /**
+     * The outcome of one game.
+     */
+    private static class GameResult {
+
+        /**
+         * The length of the game (in milliseconds, on the game's clock).
+         */
+        final long millis;
+
+        /**
+         * The number of claims judged, by the dealer or by the players themselves (see PreValidateClaims).
+         */
+        final long claims;
+
+        /**
+         * The final score of each player.
+         */
+        final int[] scores;
+
+        GameResult(long millis, long claims, int[] scores) {
+            this.millis = millis;
+            this.claims = claims;
+            this.scores = scores;
+        }
+    }
+
+    /**
+     * The simulation's main function.
+     *
+     * @param args - the number of games, how many of them to run at a time and the speed of the clock (all optional).
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int parallel = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1000;
+
+        Logger logger = Logger.getLogger("SetSimulationLogger");
+        logger.setUseParentHandlers(false);
+        Properties properties = Config.loadProperties("config.properties", logger);
+        int players = Integer.parseInt(properties.getProperty("HumanPlayers", "2"))
+                + Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", String.valueOf(players));
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        properties.setProperty("Hints", "false");
+        properties.setProperty("LogLevel", "OFF");
+        Config config = new Config(logger, properties);
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        List<Future<GameResult>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < games; i++)
+            futures.add(pool.submit(() -> play(logger, config, speed)));
+        List<GameResult> results = new ArrayList<>();
+        try {
+            for (Future<GameResult> future : futures)
+                results.add(future.get());
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        report(results, seconds, parallel, speed);
+    }
+
+    /**
+     * Plays one game to its end, on the calling thread (as the dealer's thread).
+     */
+    private static GameResult play(Logger logger, Config config, double speed) {
+        Clock clock = new Clock(speed);
+        Env env = new Env(logger, config, new UserInterfaceNoOp(), new UtilImpl(config), clock);
+        Player[] players = new Player[config.players];
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        long start = clock.currentTimeMillis();
+        dealer.run();
+        long millis = clock.currentTimeMillis() - start;
+
+        long claims = dealer.getClaimsJudged();
+        int[] scores = new int[players.length];
+        for (int i = 0; i < players.length; i++) {
+            claims += players[i].getLocalPenalties();
+            scores[i] = players[i].score();
+        }
+        return new GameResult(millis, claims, scores);
+    }
+
+    private static void report(List<GameResult> results, double seconds, int parallel, double speed) {
+        double[] lengths = new double[results.size()];
+        double[] winningScores = new double[results.size()];
+        List<Double> scores = new ArrayList<>();
+        long claims = 0;
+        for (int i = 0; i < results.size(); i++) {
+            GameResult result = results.get(i);
+            lengths[i] = result.millis / 1000.0;
+            claims += result.claims;
+            for (int score : result.scores) {
+                scores.add((double) score);
+                winningScores[i] = Math.max(winningScores[i], score);
+            }
+        }
+
+        // a scaled clock always runs at its speed, what the host achieved is the game time played per real second (per
+        // game running at a time, it falls short of the clock speed by the time spent between the games)
+        double gameSeconds = Arrays.stream(lengths).sum();
+        double speedUp = gameSeconds / seconds / Math.max(1, Math.min(parallel, results.size()));
+        System.out.printf("games: %d in %.2f seconds (%.2f games/sec, ~%.0fx real time achieved per game on a clock at"
+                + " %.0fx, approximate: game times are scaled wall time)%n",
+                results.size(), seconds, results.size() / seconds, speedUp, speed);
+        System.out.printf("claims: %d (%.1f claims/sec)%n", claims, claims / seconds);
+        System.out.println("game length (seconds on the game's clock, i.e. scaled wall time): " + distribution(lengths));
+        System.out.printf("speed-up achieved: %.0fx real time in total (%.0f game seconds played in %.2f real seconds,"
+                + " %d games at a time)%n", gameSeconds / seconds, gameSeconds, seconds, parallel);
+        System.out.println("note: game times are wall time scaled by the clock speed, so host scheduling delays are"
+                + " scaled too and the game lengths depend on the host and its load; runs are not reproducible, even"
+                + " with a DeckSeed");
+        System.out.println("score per player: " + distribution(scores.stream().mapToDouble(d -> d).toArray()));
+        System.out.println("winning score: " + distribution(winningScores));
+    }
+
+    /**
+     * @return - the mean, minimum, median, 90th percentile and maximum of the values.
+     */
+    private static String distribution(double[] values) {
+        if (values.length == 0)
+            return "none";
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return String.format("mean %.2f, min %.2f, median %.2f, p90 %.2f, max %.2f",
+                Arrays.stream(sorted).average().orElse(0), sorted[0], percentile(sorted, 0.5),
+                percentile(sorted, 0.9), sorted[sorted.length - 1]);
+    }
+
+    private static double percentile(double[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -1,6 +1,8 @@
 package bguspl.set;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -40,6 +42,105 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds and returns up to count sets in the given array of cards.
+     *
+     * @param cards - an array of card ids.
+     * @param len   - the number of cards to search, starting from cards[0].
+     * @param count - the maximum number of sets to find.
+     * @return - a list of up to count integer arrays, each one contains the card ids of a legal set.
+     */
+    default List<int[]> findSets(int[] cards, int len, int count) {
+        List<int[]> sets = new ArrayList<>();
+        findSets(cards, len, count, set -> sets.add(set.clone()));
+        return sets;
+    }
+
+    /**
+     * Finds up to count sets in the given array of cards and passes each one to a sink as it is found, in the same
+     * order findSets(List, int) returns them.
+     *
+     * @param cards - an array of card ids.
+     * @param len   - the number of cards to search, starting from cards[0].
+     * @param count - the maximum number of sets to find.
+     * @param sink  - receives the sets, and may stop the search.
+     * @return - the number of sets found (and passed to the sink).
+     */
+    int findSets(int[] cards, int len, int count, SetSink sink);
+
+    /**
+     * Returns a lazy stream of the sets in the given array of cards: the sets are searched for only as the stream
+     * is consumed, so short-circuiting operations (limit, anyMatch, findFirst) stop the search early. The stream
+     * can be made parallel, and has the same encounter order as findSets.
+     *
+     * @param cards - an array of card ids (copied, so it may change once the stream is created).
+     * @param len   - the number of cards to search, starting from cards[0].
+     * @return - a stream of integer arrays, each one contains the card ids of a legal set.
+     */
+    default Stream<int[]> streamSets(int[] cards, int len) {
+        return findSets(cards, len, Integer.MAX_VALUE).stream();
+    }
+
+    /**
+     * Finds all the sets that contain a given card and other cards from the given array, and passes each one to a
+     * sink as it is found.
+     *
+     * @param card  - the card that each set must contain.
+     * @param cards - an array of card ids (the card itself is ignored if it is there).
+     * @param len   - the number of cards to search, starting from cards[0].
+     * @param sink  - receives the sets, and may stop the search.
+     * @return - the number of sets found (and passed to the sink).
+     */
+    int findSetsWith(int card, int[] cards, int len, SetSink sink);
+
+    /**
+     * Counts the sets in the given array of cards.
+     *
+     * @param cards - an array of card ids.
+     * @param len   - the number of cards to search, starting from cards[0].
+     * @return - the number of legal sets that can be formed from the cards.
+     */
+    default int countSets(int[] cards, int len) {
+        return findSets(cards, len, Integer.MAX_VALUE, set -> true);
+    }
+
+    /**
+     * Counts the sets that contain a given card and other cards from the given array.
+     *
+     * @param card  - the card that each set must contain.
+     * @param cards - an array of card ids (the card itself is ignored if it is there).
+     * @param len   - the number of cards to search, starting from cards[0].
+     * @return - the number of legal sets that include card.
+     */
+    default int countSetsWith(int card, int[] cards, int len) {
+        return findSetsWith(card, cards, len, set -> true);
+    }
+
+    /**
+     * Checks if there is at least one set in the given array of cards.
+     *
+     * @param cards - an array of card ids.
+     * @param len   - the number of cards to search, starting from cards[0].
+     * @return - true iff a legal set can be formed from the cards.
+     */
+    default boolean hasSet(int[] cards, int len) {
+        return findSets(cards, len, 1, set -> true) > 0;
+    }
+
+    /**
+     * Receives the sets found by a search.
+     */
+    @FunctionalInterface
+    interface SetSink {
+
+        /**
+         * @param set - the card ids of a legal set, sorted. The array may be reused by the search after this call
+         *              returns, so it should be copied in order to keep it.
+         * @return - true to continue the search, false to stop it.
+         */
+        boolean accept(int[] set);
+    }
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
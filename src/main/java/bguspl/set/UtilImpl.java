@@ -1,10 +1,12 @@
 package bguspl.set;
 
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The implementation of the UserInterface interface.
@@ -13,8 +15,73 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The features of all the cards, precomputed: the features of card c are at [c * featureCount, (c + 1) * featureCount).
+     */
+    private final int[] featureValues;
+
+    /**
+     * The features of each card packed in a single long, one bit per (feature, value) pair: bit
+     * (i * featureSize + v) is set iff feature i of the card has the value v. The bits of a feature in the OR of
+     * several cards then tell how many different values the cards have in that feature.
+     * Null if the features do not fit in a long (featureCount * featureSize > 64).
+     */
+    private final long[] packedFeatures;
+
+    /**
+     * The bits of each feature in the packed representation.
+     */
+    private final long[] featureMasks;
+
+    /**
+     * For featureSize == 3, the value that completes the values a and b of a feature to a legal set, at [a * 3 + b].
+     */
+    private static final int[] THIRD_VALUE = {0, 2, 1, 2, 1, 0, 1, 0, 2};
+
+    /**
+     * Each thread's array of card positions used by the completion searches (all -1 between searches).
+     */
+    private final ThreadLocal<int[]> positions = new ThreadLocal<>();
+
+    /**
+     * The number of threads the parallel search can use (the parallelism of the common fork/join pool).
+     */
+    private final int parallelism;
+
     public UtilImpl(Config config) {
+        this(config, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Constructor for testing.
+     *
+     * @param config      - the game configuration.
+     * @param parallelism - the number of threads the parallel search can use.
+     */
+    UtilImpl(Config config, int parallelism) {
         this.config = config;
+        this.parallelism = parallelism;
+
+        featureValues = new int[config.deckSize * config.featureCount];
+        int[] features = new int[config.featureCount];
+        for (int card = 0; card < config.deckSize; ++card) {
+            cardToFeatures(card, features);
+            System.arraycopy(features, 0, featureValues, card * config.featureCount, config.featureCount);
+        }
+
+        if (config.featureCount * config.featureSize <= Long.SIZE) {
+            packedFeatures = new long[config.deckSize];
+            for (int card = 0; card < config.deckSize; ++card)
+                for (int i = 0; i < config.featureCount; ++i)
+                    packedFeatures[card] |= 1L << (i * config.featureSize + featureValues[card * config.featureCount + i]);
+            featureMasks = new long[config.featureCount];
+            long valuesMask = config.featureSize == Long.SIZE ? -1L : (1L << config.featureSize) - 1;
+            for (int i = 0; i < config.featureCount; ++i)
+                featureMasks[i] = valuesMask << (i * config.featureSize);
+        } else {
+            packedFeatures = null;
+            featureMasks = null;
+        }
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -27,58 +94,135 @@ public class UtilImpl implements Util {
     @Override
     public int[] cardToFeatures(int card) {
         int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
+        if (card >= 0 && card < config.deckSize)
+            System.arraycopy(featureValues, card * config.featureCount, features, 0, config.featureCount);
+        else
+            cardToFeatures(card, features);
         return features;
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
-        int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        int[][] features = new int[cards.length][];
+        IntStream.range(0, cards.length).forEach(i -> features[i] = cardToFeatures(cards[i]));
         return features;
     }
 
-    @Override
-    public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
-            boolean sameSame = true, butDifferent = true;
+    int featureCount() {
+        return config.featureCount;
+    }
 
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
-                }
+    /**
+     * @return - the value of a feature of a card (see cardToFeatures).
+     */
+    int featureValue(int card, int feature) {
+        return featureValues[card * config.featureCount + feature];
+    }
 
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
-                    }
+    /**
+     * Checks if an array of cards forms a legal set, without allocating any memory: each feature must have either a
+     * single value or cards.length different values among the cards.
+     *
+     * @pre - all cards are valid card ids (0 <= card < deckSize).
+     */
+    @Override
+    public boolean testSet(int[] cards) {
+        if (packedFeatures != null) {
+            long union = 0;
+            for (int card : cards)
+                union |= packedFeatures[card];
+            for (long mask : featureMasks) {
+                int values = Long.bitCount(union & mask);
+                if ((values <= 1) == (values == cards.length)) return false;
+            }
+            return true;
+        }
 
-            if (sameSame == butDifferent) return false;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int values = 0;
+            for (int j = 0; j < cards.length; ++j) {
+                // count the cards whose value of this feature does not appear in an earlier card
+                int value = featureValues[cards[j] * config.featureCount + i];
+                boolean seen = false;
+                for (int k = 0; k < j && !seen; ++k)
+                    seen = featureValues[cards[k] * config.featureCount + i] == value;
+                if (!seen) ++values;
+            }
+            if ((values <= 1) == (values == cards.length)) return false;
         }
         return true;
     }
 
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
+        return findSets(deck.stream().mapToInt(Integer::intValue).toArray(), deck.size(), count);
+    }
+
+    @Override
+    public int findSets(int[] cards, int len, int count, SetSink sink) {
+        if (config.parallelSearchThreshold > 0 && len >= config.parallelSearchThreshold
+                && parallelism > 1) // splitting does not pay off with a single thread
+            return findSetsInParallel(cards, len, count, sink);
+        if (config.featureSize == 3) return findSetsByCompletion(cards, len, count, sink);
+        if (config.featureSize > 3)
+            return new SetBacktrackingSearch(this, config.featureCount, config.featureSize, cards, len)
+                    .findSets(0, len, count, sink);
+
         int r = config.featureSize;
+        if (len < r) return 0;
+        int[] combination = new int[r];
+        int[] set = new int[r];
+        int found = 0;
+
+        for (int i = 0; i < r; ++i)
+            combination[i] = i;
+
+        while (combination[r - 1] < len) {
+            for (int i = 0; i < r; ++i)
+                set[i] = cards[combination[i]];
+            Arrays.sort(set);
+            if (testSet(set)) {
+                ++found;
+                if (!sink.accept(set) || found >= count) return found;
+            }
+
+            // generate next combination in lexicographic order
+            int t = r - 1;
+            while (t != 0 && combination[t] == len - r + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+        }
+        return found;
+    }
+
+    @Override
+    public int findSetsWith(int card, int[] cards, int len, SetSink sink) {
+        if (config.featureSize == 3) return findSetsWithByCompletion(card, cards, len, sink);
+        if (config.featureSize > 3)
+            return new SetBacktrackingSearch(this, config.featureCount, config.featureSize, cards, len)
+                    .findSetsWith(card, sink);
+
+        int[] others = new int[len];
+        int n = 0;
+        for (int i = 0; i < len; ++i)
+            if (cards[i] != card) others[n++] = cards[i];
+        int r = config.featureSize - 1;
+        if (r <= 0 || n < r) return 0;
         int[] combination = new int[r];
+        int[] set = new int[r + 1];
+        int found = 0;
 
         for (int i = 0; i < r; ++i)
             combination[i] = i;
 
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
+        while (combination[r - 1] < n) {
+            for (int i = 0; i < r; ++i)
+                set[i] = others[combination[i]];
+            set[r] = card;
+            Arrays.sort(set);
+            if (testSet(set)) {
+                ++found;
+                if (!sink.accept(set)) return found;
             }
 
             // generate next combination in lexicographic order
@@ -87,7 +231,138 @@ public class UtilImpl implements Util {
             combination[t]++;
             for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
         }
-        return sets;
+        return found;
+    }
+
+    @Override
+    public Stream<int[]> streamSets(int[] cards, int len) {
+        int[] copy = Arrays.copyOf(cards, len);
+        int[] position = null;
+        if (config.featureSize == 3) {
+            position = new int[config.deckSize];
+            Arrays.fill(position, -1);
+            for (int i = 0; i < len; ++i)
+                position[copy[i]] = i;
+        }
+        return StreamSupport.stream(new SetSpliterator(this, config.featureSize, copy, position), false);
+    }
+
+    /**
+     * Finds the sets of three cards that contain a given card by completing it with each of the other cards.
+     */
+    private int findSetsWithByCompletion(int card, int[] cards, int len, SetSink sink) {
+        int[] position = acquirePositions();
+        int[] set = new int[3];
+        int found = 0;
+        try {
+            for (int i = 0; i < len; ++i)
+                if (cards[i] != card) position[cards[i]] = i;
+
+            for (int i = 0; i < len; ++i) {
+                if (cards[i] == card) continue;
+                int k = position[thirdCard(card, cards[i])];
+                if (k > i) {
+                    ++found;
+                    if (!sink.accept(sortedSet(set, card, cards[i], cards[k]))) break;
+                }
+            }
+        } finally {
+            releasePositions(position, cards, len);
+        }
+        return found;
+    }
+
+    /**
+     * Finds sets of three cards by completion: every pair of cards determines the only card that completes it to a
+     * legal set, so it is enough to look that card up in the deck. This takes O(n^2) instead of O(n^3) and returns
+     * the same sets, in the same order, as the combination search.
+     */
+    private int findSetsByCompletion(int[] cards, int len, int count, SetSink sink) {
+        // the position of each card in the deck (-1 if it is not in the deck), doubles as the presence bitmap
+        int[] position = acquirePositions();
+        int[] set = new int[3];
+        int found = 0;
+        try {
+            for (int i = 0; i < len; ++i)
+                position[cards[i]] = i;
+
+            for (int i = 0; i < len - 2; ++i)
+                for (int j = i + 1; j < len - 1; ++j) {
+                    // taking only completions that come after the pair makes sure each set is found exactly once
+                    int k = position[thirdCard(cards[i], cards[j])];
+                    if (k > j) {
+                        ++found;
+                        if (!sink.accept(sortedSet(set, cards[i], cards[j], cards[k])) || found >= count)
+                            return found;
+                    }
+                }
+        } finally {
+            releasePositions(position, cards, len);
+        }
+        return found;
+    }
+
+    /**
+     * Splits the search between the threads of the fork/join pool (see ParallelSetSearch).
+     */
+    private int findSetsInParallel(int[] cards, int len, int count, SetSink sink) {
+        int[] copy = Arrays.copyOf(cards, len);
+        if (config.featureSize != 3)
+            return new ParallelSetSearch(this, parallelism, config.featureSize, copy, null, count).run(sink);
+
+        int[] position = acquirePositions();
+        try {
+            for (int i = 0; i < len; ++i)
+                position[copy[i]] = i;
+            return new ParallelSetSearch(this, parallelism, config.featureSize, copy, position, count).run(sink);
+        } finally {
+            releasePositions(position, copy, len);
+        }
+    }
+
+    /**
+     * Takes the calling thread's card position array (all -1), or a new one if it is already in use by a search
+     * further up the stack (e.g. from a sink).
+     */
+    private int[] acquirePositions() {
+        int[] position = positions.get();
+        if (position == null) {
+            position = new int[config.deckSize];
+            Arrays.fill(position, -1);
+        } else
+            positions.set(null);
+        return position;
+    }
+
+    /**
+     * Clears the entries of the given cards and gives the position array back to the calling thread.
+     */
+    private void releasePositions(int[] position, int[] cards, int len) {
+        for (int i = 0; i < len; ++i)
+            position[cards[i]] = -1;
+        positions.set(position);
+    }
+
+    /**
+     * Computes the card that completes two cards to a legal set when featureSize == 3: in each feature it has
+     * the same value if the two cards agree and the remaining value if they don't.
+     */
+    int thirdCard(int a, int b) {
+        int card = 0;
+        for (int i = 0, ai = a * config.featureCount, bi = b * config.featureCount; i < config.featureCount; ++i)
+            card = card * 3 + THIRD_VALUE[featureValues[ai + i] * 3 + featureValues[bi + i]];
+        return card;
+    }
+
+    private static int[] sortedSet(int[] set, int a, int b, int c) {
+        int t;
+        if (a > b) { t = a; a = b; b = t; }
+        if (b > c) { t = b; b = c; c = t; }
+        if (a > b) { t = a; a = b; b = t; }
+        set[0] = a;
+        set[1] = b;
+        set[2] = c;
+        return set;
     }
 
     public void spin() {
@@ -0,0 +1,109 @@
+package bguspl.set.ex;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A matrix of bits, each row a bitset of any number of columns, updated with CAS operations (no locks).
+ * Used by the table for the tokens: which players have tokens on each slot, and which slots each player has tokens on.
+ */
+public class AtomicBitMatrix {
+
+    /**
+     * The number of words in each row.
+     */
+    private final int words;
+
+    private final AtomicLongArray bits;
+
+    /**
+     * @param rows    - the number of rows.
+     * @param columns - the number of columns (bits in each row).
+     */
+    public AtomicBitMatrix(int rows, int columns) {
+        this.words = Math.max(1, (columns + Long.SIZE - 1) / Long.SIZE);
+        this.bits = new AtomicLongArray(rows * words);
+    }
+
+    /**
+     * Sets a bit.
+     *
+     * @return - true iff the bit was not set before.
+     */
+    public boolean set(int row, int column) {
+        int index = row * words + column / Long.SIZE;
+        long mask = 1L << column;
+        for (long word = bits.get(index); ; word = bits.get(index)) {
+            if ((word & mask) != 0) return false;
+            if (bits.compareAndSet(index, word, word | mask)) return true;
+        }
+    }
+
+    /**
+     * Clears a bit.
+     *
+     * @return - true iff the bit was set before.
+     */
+    public boolean clear(int row, int column) {
+        int index = row * words + column / Long.SIZE;
+        long mask = 1L << column;
+        for (long word = bits.get(index); ; word = bits.get(index)) {
+            if ((word & mask) == 0) return false;
+            if (bits.compareAndSet(index, word, word & ~mask)) return true;
+        }
+    }
+
+    /**
+     * @return - true iff the bit is set.
+     */
+    public boolean get(int row, int column) {
+        return (bits.get(row * words + column / Long.SIZE) & (1L << column)) != 0;
+    }
+
+    /**
+     * @return - a copy of the words of the row.
+     */
+    public long[] row(int row) {
+        long[] copy = new long[words];
+        for (int w = 0; w < words; ++w)
+            copy[w] = bits.get(row * words + w);
+        return copy;
+    }
+
+    /**
+     * @return - the number of bits set in the row.
+     */
+    public int count(int row) {
+        int count = 0;
+        for (int w = 0; w < words; ++w)
+            count += Long.bitCount(bits.get(row * words + w));
+        return count;
+    }
+
+    /**
+     * Clears a row.
+     *
+     * @return - the columns whose bits were set, in increasing order.
+     */
+    public LinkedList<Integer> clearRow(int row) {
+        LinkedList<Integer> columns = new LinkedList<>();
+        for (int w = 0; w < words; ++w)
+            addColumns(columns, w, bits.getAndSet(row * words + w, 0));
+        return columns;
+    }
+
+    /**
+     * @return - the columns whose bits are set in the row, in increasing order.
+     */
+    public LinkedList<Integer> columns(int row) {
+        LinkedList<Integer> columns = new LinkedList<>();
+        for (int w = 0; w < words; ++w)
+            addColumns(columns, w, bits.get(row * words + w));
+        return columns;
+    }
+
+    private static void addColumns(LinkedList<Integer> columns, int w, long word) {
+        for (; word != 0; word &= word - 1)
+            columns.add(w * Long.SIZE + Long.numberOfTrailingZeros(word));
+    }
+}
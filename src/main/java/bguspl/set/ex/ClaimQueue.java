@@ -0,0 +1,174 @@
+package bguspl.set.ex;
+
+import bguspl.set.Clock;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The channel through which the players ask the dealer to check their sets.
+ * Any number of players submit claims without locking, and the dealer (the single consumer) takes them in the order of
+ * their tickets. Tickets come from a global counter, so the first player to claim is always checked first, even if
+ * two claims are made in the same millisecond. The dealer blocks on the channel until a claim arrives or a deadline
+ * passes, so no claim is missed because of the timing of a wakeup.
+ */
+public class ClaimQueue {
+
+    /**
+     * The longest time (in nanoseconds) the dealer parks at a time while waiting for a claim to be submitted.
+     */
+    private static final long SUBMIT_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * A player's request to check the set of its tokens.
+     */
+    public static class Claim {
+
+        /**
+         * The order of the claim among all claims (starting from 1).
+         */
+        public final long ticket;
+
+        /**
+         * The id of the player who made the claim.
+         */
+        public final int player;
+
+        /**
+         * The version of the table (see TableSnapshot) when the claim was made.
+         */
+        public final long version;
+
+        Claim(long ticket, int player, long version) {
+            this.ticket = ticket;
+            this.player = player;
+            this.version = version;
+        }
+    }
+
+    /**
+     * The claims submitted and not yet taken by the dealer (in submission order, which may differ from ticket order).
+     */
+    private final ConcurrentLinkedQueue<Claim> incoming;
+
+    /**
+     * The claims taken out of incoming, in ticket order (accessed only by the dealer).
+     */
+    private final PriorityQueue<Claim> pending;
+
+    /**
+     * The last ticket given.
+     */
+    private final AtomicLong tickets;
+
+    /**
+     * The next ticket the dealer expects to take.
+     */
+    private long nextTicket;
+
+    /**
+     * The thread blocked on the channel (the dealer's).
+     */
+    private volatile Thread consumer;
+
+    /**
+     * The clock of the deadlines.
+     */
+    private final Clock clock;
+
+    public ClaimQueue() {
+        this(Clock.SYSTEM);
+    }
+
+    /**
+     * @param clock - the clock of the deadlines passed to await.
+     */
+    public ClaimQueue(Clock clock) {
+        this.clock = clock;
+        this.incoming = new ConcurrentLinkedQueue<>();
+        this.pending = new PriorityQueue<>((a, b) -> Long.compare(a.ticket, b.ticket));
+        this.tickets = new AtomicLong();
+        this.nextTicket = 1;
+    }
+
+    /**
+     * Takes the next ticket. The claim for it must be submitted right after.
+     *
+     * @return - the ticket.
+     */
+    public long takeTicket() {
+        return tickets.incrementAndGet();
+    }
+
+    /**
+     * Submits a claim and wakes the dealer up.
+     *
+     * @param ticket  - the ticket taken for the claim.
+     * @param player  - the id of the player who made the claim.
+     * @param version - the version of the table when the claim was made.
+     */
+    public void submit(long ticket, int player, long version) {
+        incoming.offer(new Claim(ticket, player, version));
+        wakeUp();
+    }
+
+    /**
+     * Takes the claim with the lowest ticket, if any. A claim whose ticket was taken but was not submitted yet is
+     * waited for (parked, not spinning, in case the player's thread is descheduled in between), so claims are always
+     * taken in ticket order.
+     *
+     * @return - the claim, or null if there are no claims.
+     */
+    public Claim poll() {
+        consumer = Thread.currentThread();
+        drain();
+        while (tickets.get() >= nextTicket && (pending.isEmpty() || pending.peek().ticket != nextTicket)) {
+            // the claim is being submitted right now, submit wakes the dealer up (the timeout is only a safety net)
+            LockSupport.parkNanos(this, SUBMIT_WAIT_NANOS);
+            drain();
+        }
+        Claim claim = pending.poll();
+        if (claim != null)
+            nextTicket = claim.ticket + 1;
+        return claim;
+    }
+
+    /**
+     * @return - true iff there is a claim waiting to be taken.
+     */
+    public boolean hasClaims() {
+        return !incoming.isEmpty() || !pending.isEmpty();
+    }
+
+    /**
+     * Blocks the calling thread (the dealer) until there is a claim, the deadline passes or wakeUp is called.
+     * May also return early for no reason, so the caller should check its conditions again.
+     *
+     * @param deadline - the time (in milliseconds, on the clock) to block until.
+     * @return - true iff there is a claim waiting to be taken.
+     */
+    public boolean await(long deadline) {
+        consumer = Thread.currentThread();
+        long timeout = deadline - clock.currentTimeMillis();
+        if (!hasClaims() && timeout > 0)
+            LockSupport.parkNanos(this, clock.toNanos(timeout));
+        return hasClaims();
+    }
+
+    /**
+     * Wakes the thread blocked on the channel up (e.g. when the game is terminated).
+     */
+    public void wakeUp() {
+        Thread thread = consumer;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    private void drain() {
+        for (Claim claim = incoming.poll(); claim != null; claim = incoming.poll())
+            pending.add(claim);
+    }
+}
@@ -0,0 +1,101 @@
+package bguspl.set.ex;
+
+import java.util.PriorityQueue;
+
+/**
+ * The deadlines the dealer has to act on (timer display updates, freeze display updates etc.), kept in time order.
+ * The dealer sleeps until the earliest deadline (or until a set is claimed) and then runs the actions that are due,
+ * so it never wakes up when there is nothing to do.
+ * Not thread safe, only the dealer's thread uses it.
+ */
+public class DeadlineScheduler {
+
+    /**
+     * An action scheduled to run at some time.
+     */
+    public static class Deadline {
+
+        /**
+         * The time (in milliseconds, on the game's clock) the action is due.
+         */
+        public final long time;
+
+        /**
+         * The order the deadline was scheduled in, breaks ties between deadlines of the same time.
+         */
+        private final long sequence;
+
+        private final Runnable action;
+
+        /**
+         * True iff the deadline was cancelled (it is skipped when it is due).
+         */
+        private boolean cancelled;
+
+        Deadline(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+    }
+
+    private final PriorityQueue<Deadline> deadlines;
+
+    /**
+     * The number of deadlines scheduled so far.
+     */
+    private long scheduled;
+
+    public DeadlineScheduler() {
+        this.deadlines = new PriorityQueue<>((a, b) -> a.time != b.time ? Long.compare(a.time, b.time) : Long.compare(a.sequence, b.sequence));
+    }
+
+    /**
+     * Schedules an action.
+     *
+     * @param time   - the time (in milliseconds) the action is due.
+     * @param action - the action to run.
+     * @return - the deadline, to cancel it later.
+     */
+    public Deadline schedule(long time, Runnable action) {
+        Deadline deadline = new Deadline(time, scheduled++, action);
+        deadlines.add(deadline);
+        return deadline;
+    }
+
+    /**
+     * Cancels a deadline, if it did not run yet.
+     *
+     * @param deadline - the deadline to cancel, may be null.
+     */
+    public void cancel(Deadline deadline) {
+        if (deadline != null)
+            deadline.cancelled = true;
+    }
+
+    /**
+     * @return - the time of the earliest deadline, or Long.MAX_VALUE if there is none.
+     */
+    public long next() {
+        while (!deadlines.isEmpty() && deadlines.peek().cancelled)
+            deadlines.poll();
+        return deadlines.isEmpty() ? Long.MAX_VALUE : deadlines.peek().time;
+    }
+
+    /**
+     * Runs the actions that are due, in time order. Actions may schedule new deadlines, the ones already due run too.
+     *
+     * @param now - the current time (in milliseconds).
+     * @return - the number of actions run.
+     */
+    public int runDue(long now) {
+        int ran = 0;
+        while (next() <= now) {
+            Deadline deadline = deadlines.poll();
+            deadline.cancelled = true;
+            deadline.action.run();
+            ++ran;
+        }
+        return ran;
+    }
+}
@@ -5,18 +5,10 @@ import bguspl.set.Env;
 
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-
-// added by Oshri
-import java.util.Iterator;
 
 /**
  * This class manages the dealer's threads and data
@@ -35,9 +27,9 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The card ids that are left in the dealer's deck.
      */
-    private final List<Integer> deck;
+    private final Deck deck;
 
     /**
      * True iff game should be terminated.
@@ -52,26 +44,26 @@ public class Dealer implements Runnable {
 
     // ------------------------------------------ added by Oshri and Ofir ------------------------------------------
     /**
-     * The time to sleep when the function sleepUntilWokenOrTimeout() is called and the last sleep was not interrupted
+     * The deadlines of the timer display updates, the dealer sleeps until the earliest deadline unless a set is claimed
      */
     
-     private final int fullSleepTime = 1000;
+     private final DeadlineScheduler scheduler;
 
 
     /**
-     * The time that has left to sleep when the function sleepUntilWokenOrTimeout() is called and the last sleep was interrupted
+     * The next update of the timer display
      */
     
-     private long partialSleepTime = fullSleepTime;
+     private DeadlineScheduler.Deadline timerTick;
     
     /**
-     * a hash map that contains the time when the player should be unfrozen, the key is the player's id
+     * the frozen players and the time when each of them should be unfrozen
      */
       
-    private Map<Integer, Long> playerUnfreezeTimeMap; 
+    private final FreezeService freezes; 
     
     /*
-    * the time to sleep when the timer is red
+    * the time between two updates of the timer display when the timer is red
     */
     private long redTimerSleepTime = 100;
 
@@ -88,6 +80,31 @@ public class Dealer implements Runnable {
      */
     private final Thread[] playerThreads;
 
+    /**
+     * Creates the threads of the players (platform or virtual threads)
+     */
+    private final PlayerThreadFactory threadFactory;
+
+    /**
+     * The claims of the players to have a set, taken by the dealer in the order they were made
+     */
+    private final ClaimQueue claims;
+
+    /**
+     * The key presses posted by the players in the actor execution model, null in the shared model
+     */
+    private final DealerMailbox mailbox;
+
+    /**
+     * The time the dealer sleeps until, Long.MAX_VALUE while he is deciding, Long.MIN_VALUE while he is awake
+     */
+    private volatile long sleepingUntil = Long.MIN_VALUE;
+
+    /**
+     * The number of claims the dealer judged (legal or not)
+     */
+    private volatile long claimsJudged;
+
     // -----------------------------------------------------------------------------------------------------
 
     public Dealer(Env env, Table table, Player[] players) {
@@ -95,9 +112,13 @@ public class Dealer implements Runnable {
         this.env = env;
         this.table = table;
         this.players = players;
-        this.playerUnfreezeTimeMap = new HashMap<>();
+        this.freezes = new FreezeService(env, players.length);
         this.playerThreads = new Thread[env.config.players]; 
-        this.deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        this.deck = new Deck(env);
+        this.claims = new ClaimQueue(env.clock);
+        this.mailbox = env.config.actorDealer ? new DealerMailbox(claims::wakeUp) : null;
+        this.threadFactory = new PlayerThreadFactory(env);
+        this.scheduler = new DeadlineScheduler();
     }
 
     /**
@@ -108,20 +129,16 @@ public class Dealer implements Runnable {
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
         // start the players threads
         dealerThread=Thread.currentThread();
+        table.startPresentation();
         for (Player player : players) 
         {
-            Thread playerThread = new Thread(player);
+            Thread playerThread = threadFactory.newThread(player, "player-" + player.id);
             playerThreads[player.id] = playerThread;
             playerThread.start();
         }
         
         while (!shouldFinish()) {
-            placeCardsOnTable();
-            if(reshuffleTime == Long.MAX_VALUE)
-            {
-                reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-                updateTimerDisplay(true);
-            }
+            placeCardsOnTable(); // starts the countdown (see resetReshuffleTime)
             timerLoop();
             removeAllCardsFromTable();
         }
@@ -134,11 +151,15 @@ public class Dealer implements Runnable {
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() {
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+        while (!terminate && env.clock.currentTimeMillis() < reshuffleTime) {
             sleepUntilWokenOrTimeout();
-            removeCardsFromTable();
-            if(!terminate)
-                placeCardsOnTable();
+            // in the actor model the whole mailbox is drained first, the judge/deal pass runs only if a set was claimed
+            if (processMessages())
+            {
+                removeCardsFromTable();
+                if(!terminate)
+                    placeCardsOnTable();
+            }
         }
     }
 
@@ -148,16 +169,23 @@ public class Dealer implements Runnable {
 
      public void terminate() {
         terminate = true;
+        claims.wakeUp();
+        // all the players stop before any of them is waited for, so the players still playing do not hold up (or, on
+        // virtual threads, starve) the ones that are stopping
         for (int i = env.config.players - 1; i >= 0; i--) {
-            Player player = players[i];
-            player.terminate();
-            try {
+            players[i].terminate();
+            if (playerThreads[i] != null)
                 playerThreads[i].interrupt();
-                playerThreads[i].join();
+        }
+        for (int i = env.config.players - 1; i >= 0; i--) {
+            try {
+                if (playerThreads[i] != null)
+                    playerThreads[i].join(); // each player joins his computer thread before he ends
 
             } catch (InterruptedException ignored) {}
 
         }
+        table.stopPresentation();
         
     }
 
@@ -167,160 +195,155 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || !deck.hasSet();
     }
 
     /**
      * Checks if cards should be removed from the table and removes them.
+     * All the pending claims are judged in one pass, in the order they were made, against the table as the earlier
+     * claims of the pass left it. The table is refilled once, after the whole pass.
      */
-    private void removeCardsFromTable() 
+    void removeCardsFromTable() 
     {
-        // check if there is a player that pressed three tokens         
-        Integer playerToCheckSet = findFirstPlayerToCheckSet();
-        if (playerToCheckSet != null)
+        List<Integer> winners = new LinkedList<>();
+        // check every player that pressed three tokens, a claim whose tokens were reset by an earlier winner is skipped
+        for (Integer playerToCheckSet = nextPlayerToCheckSet(); playerToCheckSet != null; playerToCheckSet = nextPlayerToCheckSet())
         {
             int[] cardsToCheck = tokensToCards(playerToCheckSet);
-            //holds the players that should be updated after the cards are removed from the table
-            Set<Integer> playerToUpdate=new HashSet<Integer>();
+            claimsJudged++;
             // true if the cards that returned are not null and the set is legal
             if (cardsToCheck != null && env.util.testSet(cardsToCheck)) 
             {
-                // deleteing the cards from the table
-                for (int i = 0; i < cardsToCheck.length; i++) 
-                {
-                    Integer slotToDelete = table.cardToSlot[cardsToCheck[i]];
-                    if(slotToDelete != null)
-                    {
-                        LinkedList<Integer> playersToReset;
-                        synchronized (table) 
-                        {
-                            playersToReset = table.getTokensPerSlot(slotToDelete);
-                            for (int player: playersToReset) 
-                            {
-                                if(player != playerToCheckSet)
-                                    playerToUpdate.add(player);    
-                            }
-                            table.removeCard(slotToDelete);
-                        }
-                        
-                    }
-                }
-                //all players that have tokens on the slots that were removed should be updated
-                for (int player: playerToUpdate) 
-                {
-                    players[player].setTimeOfSetComplition(-1); //intrupt with the other players tokens
-                    synchronized (players[player]) 
-                    {
-                        players[player].notify();
-                    }
-                }
-                placeCardsOnTable(); // placing new cards instead of the removed cards
-                updateTimerDisplay(true); // the timer should be reset after a legal set was found
-                point(playerToCheckSet); // add a point to the player's score, and freeze him for a certain amount of time
+                removeSet(playerToCheckSet, cardsToCheck);
+                winners.add(playerToCheckSet);
             }
             // false if the set is illegal or does not exist because there is not card in this slot (thus table.slotToCard[slot] = null)
             else 
             {
                 penalty(playerToCheckSet); // freeze the player for a bigger amount of time (penalty time)
             }
-            
+        }
+        if (!winners.isEmpty())
+        {
+            placeCardsOnTable(); // placing new cards instead of the removed cards
+            updateTimerDisplay(true); // the timer should be reset after a legal set was found
+            for (int winner : winners)
+            {
+                point(winner); // add a point to the player's score, and freeze him for a certain amount of time
+            }
         }
     }
+
     /**
-     * Check if any cards can be removed from the deck and placed on the table.
+     * Removes the cards of a legal set from the table, and voids the claims of the other players who had tokens on them.
      */
-    private void placeCardsOnTable() 
+    private void removeSet(int playerToCheckSet, int[] cardsToCheck)
     {
-        // TODO implement
-        boolean tableChanged = false;
-         // need to check if there are any cards left in the deck and if there are any empty slots on the table
-        for (int i = 0; deck.size() > 0 && i < table.slotToCard.length; i++) 
+        //holds the players that should be updated after the cards are removed from the table
+        Set<Integer> playerToUpdate=new HashSet<Integer>();
+        // deleteing the cards from the table
+        for (int i = 0; i < cardsToCheck.length; i++) 
         {
-            if (table.slotToCard[i] == null) 
+            Integer slotToDelete = table.cardToSlot[cardsToCheck[i]];
+            if(slotToDelete != null)
             {
-                tableChanged = true;
-                // drawing the card from the deck is done randomly, simulating shuffling the deck
-                int card = deck.remove(randomCardIndex());
-                synchronized (table) 
+                // the tokens on the slot are removed together with the card
+                for (int player: table.removeCard(slotToDelete)) 
                 {
-                    table.placeCard(card, i);
+                    if(player != playerToCheckSet)
+                        playerToUpdate.add(player);    
                 }
             }
         }
-        // converts the cards that are on the table to a list after removing the nulls
-        List<Integer> cardsOnTable = Arrays.stream(table.slotToCard).filter(Objects::nonNull).collect(Collectors.toList()); 
-        // find all the sets on the table, 220 = 12 choose 3, the maximum number of possible sets on the table
-        List<int[]> sets = env.util.findSets(cardsOnTable, 220); 
-        
-        if (tableChanged)
+        //all players that have tokens on the slots that were removed should be updated
+        for (int player: playerToUpdate) 
         {
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
+            players[player].setTimeOfSetComplition(-1); //intrupt with the other players tokens
+            players[player].notifyVerdict();
         }
+    }
+
+    /**
+     * Check if any cards can be removed from the deck and placed on the table.
+     */
+    private void placeCardsOnTable() 
+    {
+        boolean tableChanged = dealCards();
+        // the table keeps its sets indexed as cards are placed and removed, so there is no need to search for them
+        boolean hasSet = table.hasSet();
 
-        // if there is not a single set on the table and there are still cards on the deck, remove all the cards from the table and place new cards
-        if (sets.size() == 0 && deck.size() > 0)
+        // if there is not a single set on the table and there are still cards on the deck, remove all the cards from the table and deal them again.
+        // the deal picks the cards so that there is a set whenever the cards left allow it, so one redeal is enough
+        if (!hasSet && deck.size() > 0)
         {
             removeAllCardsFromTable();
-            placeCardsOnTable();
+            tableChanged = dealCards();
+            hasSet = table.hasSet();
         }
-        else if (tableChanged && sets.size() != 0 && env.config.hints ) // if the table was changed and hints is true - print them
+
+        if (tableChanged)
+        {
+            resetReshuffleTime();
+        }
+
+        if (tableChanged && hasSet && env.config.hints ) // if the table was changed and hints is true - print them
         {
             table.hints();
         }
-        if (sets.size() ==0 && deck.size() == 0)
+        // no set can be formed from the cards that are left
+        if (!hasSet)
         {
                 terminate();
         }
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Fills the empty slots on the table with cards from the deck, chosen so that the table has a set if possible.
+     *
+     * @return - true iff any card was placed.
      */
-    private void sleepUntilWokenOrTimeout() 
+    private boolean dealCards()
     {
-        long preSleepTime = System.currentTimeMillis(); // current time before the sleep
-        long timeLeft = reshuffleTime - System.currentTimeMillis(); // the time left until the next reshuffle
-        try 
+        if (table.countCards() == table.slotToCard.length)
+            return false; // the table is full, nothing to deal
+        int[] emptySlots = new int[table.slotToCard.length];
+        int[] cardsOnTable = new int[table.slotToCard.length];
+        int empty = 0, cards = 0;
+        for (int i = 0; i < table.slotToCard.length; i++)
         {
-            // the dealer sleeps for the amount of time that left if it was interrupted last time, otherwise he sleeps for a fullSleepTime
-            Thread.sleep(partialSleepTime);
-            partialSleepTime = fullSleepTime;
-            // if we got to the next lines, the dealer sleep was not interrupted
-            // if the timer is red, the dealer sleep cycle shortens to redTimerSleepTime  
-            if (env.config.turnTimeoutWarningMillis >= timeLeft)
-            { 
-                partialSleepTime = redTimerSleepTime;
-            }
-            // if the timer is not red, and the dealer sleep was not interrupted, in the next cycle the dealer will sleep for a fullSleepTime
+            Integer card = table.slotToCard[i];
+            if (card == null)
+                emptySlots[empty++] = i;
             else
-            {
-                partialSleepTime = fullSleepTime;
-            }
+                cardsOnTable[cards++] = card;
+        }
+
+        int[] drawn = deck.drawForTable(cardsOnTable, cards, empty);
+        if (drawn.length == 0)
+            return false;
+        table.placeCards(drawn, Arrays.copyOf(emptySlots, drawn.length));
+        return true;
+    }
 
-        } 
-        catch (InterruptedException ignored) 
+    /**
+     * Sleep until the next deadline (reshuffle or display update), or until a player claims a set.
+     */
+    private void sleepUntilWokenOrTimeout() 
+    {
+        // a claim made before the dealer blocks is not missed, the queue is checked before blocking
+        if (mailbox == null || mailbox.isEmpty())
         {
-            long acutalSleepTime = System.currentTimeMillis() - preSleepTime; // the actual time the dealer slept for
-            // if the timer is red, next cycle will be according to the redTimerSleepTime
-            if (env.config.turnTimeoutWarningMillis >= timeLeft)
-            {
-                partialSleepTime = redTimerSleepTime - acutalSleepTime;
-            }
-            // if the timer is not red, and the dealer sleep was interrupted, it will complete the cycle next time
-            else
-            {
-                partialSleepTime = fullSleepTime - acutalSleepTime;
-            }
-            // if partialSleepTime is negative, the dealer overslept, so the next cycle will be a 0 sleep cycle 
-            if (partialSleepTime < 0)
-            {
-                partialSleepTime = 0;
-            }
+            // a deadline added by another thread from now on is either seen here or wakes the dealer up (wakeUpBefore)
+            sleepingUntil = Long.MAX_VALUE;
+            long deadline = Math.min(Math.min(scheduler.next(), freezes.nextDeadline()), reshuffleTime);
+            sleepingUntil = deadline;
+            claims.await(deadline);
+            sleepingUntil = Long.MIN_VALUE;
         }
         
-        boolean timeToReshuffle = System.currentTimeMillis() >= reshuffleTime;
-        updateTimerDisplay(timeToReshuffle); // the time has changed because the dealer slept for a short period
-        updateFreezeTimeDisplay();
+        boolean timeToReshuffle = env.clock.currentTimeMillis() >= reshuffleTime;
+        scheduler.runDue(env.clock.currentTimeMillis()); // the display updates that are due
+        freezes.advance(env.clock.currentTimeMillis());
         /* 
          *  if true it's time to reshuffle the deck and restart the countdown, we need to check if there are any players
             who asked to check their set before we remove all cards from the table
@@ -329,7 +352,7 @@ public class Dealer implements Runnable {
         {
             removeCardsFromTable();
             removeAllCardsFromTable();
-            if (env.util.findSets(deck, 1).size() == 0) // if there are no sets in the deck
+            if (!deck.hasSet()) // if there are no sets in the deck
             {
                 terminate(); // so when we go back to timerLoop, terminate=true and we will go back to the run method and announce the winners
             }
@@ -350,48 +373,78 @@ public class Dealer implements Runnable {
      {
         if (reset) 
         {
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-            env.ui.setCountdown(env.config.turnTimeoutMillis, env.config.turnTimeoutMillis <= env.config.turnTimeoutWarningMillis);
+            resetReshuffleTime();
+            return;
         }
-        else if(reshuffleTime-System.currentTimeMillis() > env.config.turnTimeoutWarningMillis)
+        else if(reshuffleTime-env.clock.currentTimeMillis() > env.config.turnTimeoutWarningMillis)
         { 
            // rounding the time left to the nearest second
-            long countdown = (int)Math.round((reshuffleTime - System.currentTimeMillis())/1000.0)*1000; // the time left until the deck should be reshuffled
+            long countdown = (int)Math.round((reshuffleTime - env.clock.currentTimeMillis())/1000.0)*1000; // the time left until the deck should be reshuffled
             if(countdown!=lastSecondUpdate)
                env.ui.setCountdown(countdown, false); // if the time left is less the warning time, the timer will be painted in red
             lastSecondUpdate=countdown;  
         }
         //  if the time left is less the warning time, the timer will be painted in red and no need to round the seconds
         else{
-           long countdown = reshuffleTime - System.currentTimeMillis(); // the time left until the deck should be reshuffled
+           long countdown = Math.max(0, reshuffleTime - env.clock.currentTimeMillis()); // the time left until the deck should be reshuffled
            env.ui.setCountdown(countdown, true); // if the time left is less the warning time, the timer will be painted in red  
         }
+        scheduleTimerTick();
      }
 
+    /**
+     * Restarts the countdown: sets the reshuffle time a full turn from now, shows it, and schedules the next update of
+     * the timer display against the new reshuffle time. The reshuffle time is only ever set here.
+     */
+    private void resetReshuffleTime()
+    {
+        reshuffleTime = env.clock.currentTimeMillis() + env.config.turnTimeoutMillis;
+        env.ui.setCountdown(env.config.turnTimeoutMillis, env.config.turnTimeoutMillis <= env.config.turnTimeoutWarningMillis);
+        lastSecondUpdate = env.config.turnTimeoutMillis;
+        scheduleTimerTick();
+    }
+
+    /**
+     * Schedules the next update of the timer display: the next time the displayed second changes, or after
+     * redTimerSleepTime if the timer is red.
+     */
+    private void scheduleTimerTick()
+    {
+        scheduler.cancel(timerTick);
+        long now = env.clock.currentTimeMillis();
+        long timeLeft = reshuffleTime - now;
+        if (timeLeft <= 0)
+        {
+            return; // the countdown is over, the reshuffle restarts it
+        }
+        long next;
+        if (timeLeft <= env.config.turnTimeoutWarningMillis)
+        {
+            next = now + redTimerSleepTime;
+        }
+        else
+        {
+            // the display rounds the time left to the nearest second, so it changes when the time left drops below k.5 seconds
+            long boundary = timeLeft >= 500 ? (timeLeft - 500) / 1000 * 1000 + 500 : 0;
+            next = Math.min(reshuffleTime - boundary + 1, reshuffleTime - env.config.turnTimeoutWarningMillis);
+        }
+        timerTick = scheduler.schedule(Math.min(next, reshuffleTime), () -> updateTimerDisplay(false));
+    }
+
     /**
      * Returns all the cards from the table to the deck.
      */
     private void removeAllCardsFromTable() 
     {
-        for (int i = 0; i < table.slotToCard.length; i++) 
+        // the table removes the cards and all the tokens at once
+        for (int card : table.removeAllCards())
         {
-            if (table.slotToCard[i] != null) // a slot could be empty if the deck is empty
-            {
-              synchronized (table) 
-              {
-                  deck.add(table.slotToCard[i]);
-                  table.removeCard(i);
-              }
-            }
+            deck.add(card);
         }
         for (Player player : players) 
         {
-            synchronized (player) 
-            {
-                player.notify();
-                player.setTimeOfSetComplition(-1); //intrupt with the other players tokens
-                table.removeAllTokensByPlayer(player.id);
-            }
+            player.setTimeOfSetComplition(-1); //intrupt with the other players tokens
+            player.notifyVerdict();
         }
     }
 
@@ -423,14 +476,10 @@ public class Dealer implements Runnable {
 
     private void point(int playerId)
     {
+        // the freeze is applied before the verdict is published, so a player woken by the verdict is already frozen
+        players[playerId].point(); // also freezes the player for a certain amount of time
         players[playerId].setTimeOfSetComplition(-1); // signals that there is no set in the player's tokens
-        players[playerId].point();
-        synchronized (players[playerId]) 
-        {
-            players[playerId].notify();
-        }
-        playerUnfreezeTimeMap.put( playerId , System.currentTimeMillis() + env.config.pointFreezeMillis); // the time when the player should be unfrozen
-        env.ui.setFreeze(playerId, env.config.pointFreezeMillis); // freeze the player for a certain amount of time
+        players[playerId].notifyVerdict();
     }
 
     /*
@@ -438,15 +487,9 @@ public class Dealer implements Runnable {
      */
     private void penalty(int playerId)
     {
-        
+        players[playerId].penalty(); // also freezes the player for the penalty time, before the verdict is published
         players[playerId].setTimeOfSetComplition(-2); // signals that the set was already checked, no need to check it again
-        players[playerId].penalty();
-        synchronized (players[playerId]) 
-        {
-            players[playerId].notify();
-        }
-        playerUnfreezeTimeMap.put( playerId , System.currentTimeMillis() + env.config.penaltyFreezeMillis); // the time when the player should be unfrozen
-        env.ui.setFreeze(playerId, env.config.penaltyFreezeMillis);
+        players[playerId].notifyVerdict();
     }
 
     /*
@@ -455,76 +498,129 @@ public class Dealer implements Runnable {
 
     private int[] tokensToCards(Integer playerToCheckSet)
     {
-        List<Integer> sets;
-        synchronized (table) 
+        TableSnapshot snapshot = table.snapshot(); // only the dealer changes the cards, so the tokens read match them
+        int[] sets = snapshot.tokens(playerToCheckSet);
+        if (sets.length != env.config.featureSize)
         {
-            sets = table.getTokensByPlayer(playerToCheckSet);
+            return null;
         }
-        int[] cardsToCheck = new int[3];
+        int[] cardsToCheck = new int[sets.length];
         for (int i = 0; i < cardsToCheck.length; i++) 
         {
-            // if one of the slot to check is null, the set is not legal and the player should be penalized
-            if (table.slotToCard[sets.get(i)] == null)
+            // if one of the slot to check is empty, the set is not legal and the player should be penalized
+            if (snapshot.card(sets[i]) < 0)
             {
                 return null;
             }
-            cardsToCheck[i] = table.slotToCard[sets.get(i)];
-            
-            
+            cardsToCheck[i] = snapshot.card(sets[i]);
         }
         return cardsToCheck;
     }
 
 
     /*
-     * find the first player who asked to check his set, and return his index. if no player asked to check his set, return null
+     * find the first player who asked to check his set (and did not change his tokens since), and return his index.
+     * if no player asked to check his set, return null
      */
-    private Integer findFirstPlayerToCheckSet()
+    private Integer nextPlayerToCheckSet()
     {
-        Integer playerToCheckSet = null;
-        long minTime = Long.MAX_VALUE;
-        for (int i = 0; i < players.length; i++) 
+        for (ClaimQueue.Claim claim = claims.poll(); claim != null; claim = claims.poll())
         {
-            long timeSent = players[i].getTimeOfSetComplition();
-            if (timeSent >= 0 && timeSent < minTime) 
+            // the claim is stale if the player's tokens were reset, or a card under them was replaced, after it was made
+            if (players[claim.player].getTimeOfSetComplition() == claim.ticket)
             {
-                minTime = timeSent;
-                playerToCheckSet = i;
+                TableSnapshot snapshot = table.snapshot();
+                int[] tokens = snapshot.tokens(claim.player);
+                if (tokens.length == env.config.featureSize && !snapshot.changedSince(tokens, claim.version))
+                {
+                    return claim.player;
+                }
+                players[claim.player].setTimeOfSetComplition(-1);
+                players[claim.player].notifyVerdict();
             }
         }
-        return playerToCheckSet; 
+        return null;
     }
-    
-    
+
     /**
-     * Returns a random card index from the deck.
+     * Applies all the messages the players posted, in the order they were posted (actor execution model only).
      *
-     * @return - a random card index.
+     * @return - true iff there may be claims to judge: always in the shared model, in the actor model only if the
+     *           messages completed a set.
      */
-    private int randomCardIndex()
+    private boolean processMessages()
     {
-        return (int) (Math.random() * deck.size());
+        if (mailbox == null)
+            return true;
+        for (DealerMailbox.Message message = mailbox.poll(); message != null; message = mailbox.poll())
+        {
+            if (message.type == DealerMailbox.Message.Type.TOGGLE_TOKEN)
+            {
+                toggleToken(players[message.player], message.slot);
+                players[message.player].keyPressApplied();
+            }
+        }
+        return claims.hasClaims();
     }
 
     /**
-     * Update the freeze time display for all players and remove players that are not frozen anymore.
-     */
-    private void updateFreezeTimeDisplay() {
-        Iterator<Integer> iterator = playerUnfreezeTimeMap.keySet().iterator();
-        while (iterator.hasNext()) {
-            Integer playerId = iterator.next();
-            long timeLeft =(int)Math.ceil((playerUnfreezeTimeMap.get(playerId) - System.currentTimeMillis())/1000.0)*1000;
-            if (timeLeft > 0) { // if the player is still frozen
-                env.ui.setFreeze(playerId, timeLeft); // update the freeze time display
-            } 
-            // if the player is not frozen anymore, remove him from the hash map and update the freeze time display to 0
-            else {
-                env.ui.setFreeze(playerId, 0);
-                iterator.remove();
-            }
+     * Applies a player's key press, and claims a set for him if it completes one (actor execution model only).
+     * A key press of a frozen player or of a player whose claim was not checked yet is ignored.
+     */
+    private void toggleToken(Player player, int slot)
+    {
+        if (player.getTimeOfSetComplition() > 0 || freezes.isFrozen(player.id))
+            return;
+        if (table.getTokensNumberByPlayer(player.id) < env.config.featureSize)
+        {
+            if (table.toggleToken(player.id, slot) && table.getTokensNumberByPlayer(player.id) == env.config.featureSize
+                    && player.getTimeOfSetComplition() == -1)
+                claimSet(player);
         }
+        //after a penalty the player has all his tokens, it allows only to remove one token
+        else if (table.removeToken(player.id, slot))
+            player.setTimeOfSetComplition(-1);
+    }
+
+    /**
+     * Posts a player's key press to the dealer (actor execution model only). Called by the player's thread.
+     *
+     * @param player - the id of the player.
+     * @param slot   - the slot of the key pressed.
+     */
+    public void postKeyPress(int player, int slot)
+    {
+        mailbox.toggleToken(player, slot);
     }
 
+    /**
+     * Wakes the dealer up if he sleeps past the given time (e.g. a freeze display update added by a player's thread).
+     *
+     * @param time - the time (in milliseconds) the dealer should be awake by.
+     */
+    public void wakeUpBefore(long time)
+    {
+        if (time < sleepingUntil)
+            claims.wakeUp();
+    }
+
+    /**
+     * Asks the dealer to check the set of the player's tokens. Called by the player's thread.
+     *
+     * @param player - the player who claims a set.
+     */
+    public void claimSet(Player player)
+    {
+        // the tokens may have been removed by the dealer since the player counted them, then there is nothing to claim
+        TableSnapshot snapshot = table.snapshot();
+        if (snapshot.countTokens(player.id) != env.config.featureSize)
+            return;
+        long ticket = claims.takeTicket();
+        player.setTimeOfSetComplition(ticket);
+        claims.submit(ticket, player.id, snapshot.version);
+    }
+
+
     /*
      * finds the highest score of all the players
      */
@@ -540,6 +636,27 @@ public class Dealer implements Runnable {
         }
         return maxScore;
     }
+    /*
+     * returns the service that keeps track of the frozen players
+     */
+    public FreezeService getFreezes()
+    {
+        return freezes;
+    }
+    /*
+     * returns the factory of the players' threads
+     */
+    public PlayerThreadFactory getThreadFactory()
+    {
+        return threadFactory;
+    }
+    /*
+     * returns the number of claims the dealer judged
+     */
+    public long getClaimsJudged()
+    {
+        return claimsJudged;
+    }
     /*
      * returns the dealer's thread
      */
@@ -0,0 +1,103 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The mailbox of the dealer in the actor execution model: the players post their key presses here instead of changing
+ * the table themselves, and the dealer thread (the single consumer) applies them one after the other. All the changes
+ * to the table and to the players' claims are then made by the dealer thread alone.
+ * The dealer drains the whole mailbox in each wakeup, so he is woken up only by a message posted to an empty mailbox.
+ */
+public class DealerMailbox {
+
+    /**
+     * A message from a player to the dealer.
+     */
+    public static class Message {
+
+        /**
+         * The kinds of messages.
+         */
+        public enum Type {
+            /**
+             * Place the player's token on the slot, or remove it if it is there.
+             */
+            TOGGLE_TOKEN
+        }
+
+        public final Type type;
+
+        /**
+         * The id of the player who sent the message.
+         */
+        public final int player;
+
+        /**
+         * The slot the message is about.
+         */
+        public final int slot;
+
+        Message(Type type, int player, int slot) {
+            this.type = type;
+            this.player = player;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * The messages not yet taken by the dealer, in the order they were posted.
+     */
+    private final ConcurrentLinkedQueue<Message> messages;
+
+    /**
+     * The number of messages posted and not yet taken (may lag the queue by a message being posted or taken).
+     */
+    private final AtomicInteger size;
+
+    /**
+     * Wakes the dealer up when a message is posted.
+     */
+    private final Runnable wakeUp;
+
+    /**
+     * @param wakeUp - wakes the dealer up (called after a message is posted to an empty mailbox).
+     */
+    public DealerMailbox(Runnable wakeUp) {
+        this.messages = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+        this.wakeUp = wakeUp;
+    }
+
+    /**
+     * Posts a request to toggle a token. Called by the player's thread, never blocks.
+     *
+     * @param player - the id of the player.
+     * @param slot   - the slot of the token.
+     */
+    public void toggleToken(int player, int slot) {
+        messages.add(new Message(Message.Type.TOGGLE_TOKEN, player, slot));
+        // a mailbox that was not empty has a wakeup on the way, or is being drained by the dealer
+        if (size.getAndIncrement() <= 0)
+            wakeUp.run();
+    }
+
+    /**
+     * Takes the oldest message (called by the dealer only).
+     *
+     * @return - the message, or null if there is none.
+     */
+    public Message poll() {
+        Message message = messages.poll();
+        if (message != null)
+            size.decrementAndGet();
+        return message;
+    }
+
+    /**
+     * @return - true iff there are no messages waiting.
+     */
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+}
@@ -0,0 +1,197 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * This class holds the cards left in the dealer's deck, and keeps count of the legal sets that can be formed from them.
+ * The deck is kept shuffled: each returned card is put in a random position (an inside-out Fisher-Yates step) and
+ * cards are drawn from random positions, both in O(1). The order is reproducible for a given seed (see
+ * Config.deckSeed).
+ *
+ * @inv setCount() == the number of legal sets formed by the cards in the deck
+ */
+public class Deck {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The card ids that are left in the deck, at cards[0] to cards[size - 1].
+     */
+    private final int[] cards;
+
+    /**
+     * The number of cards left in the deck.
+     */
+    private int size;
+
+    /**
+     * The index of each card in cards, -1 if the card is not in the deck.
+     */
+    private final int[] indexOf;
+
+    /**
+     * The source of randomness for shuffling and drawing.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * True iff the number of sets is kept up to date on every draw and return. Each update costs O(deck) only when a
+     * pair of cards determines the card that completes it (featureSize == 3); otherwise the deck is searched on demand.
+     */
+    private final boolean counting;
+
+    /**
+     * The number of legal sets that can be formed from the cards in the deck (if counting).
+     */
+    private long sets;
+
+    /**
+     * Creates a full deck.
+     *
+     * @param env - the game environment object.
+     */
+    public Deck(Env env) {
+        this.env = env;
+        this.cards = new int[env.config.deckSize];
+        this.size = 0;
+        this.indexOf = new int[env.config.deckSize];
+        Arrays.fill(indexOf, -1);
+        this.random = env.config.deckSeed != null ? new SplittableRandom(env.config.deckSeed) : new SplittableRandom();
+        // only a pair of cards determines the one card that completes it when featureSize == 3, so only then does a
+        // draw or return update the count in O(deck); for other sizes hasSet and setCount search the whole deck on
+        // every call instead (a backtracking search, see UtilImpl.findSets)
+        this.counting = env.config.featureSize == 3;
+        this.sets = 0;
+        for (int card = 0; card < env.config.deckSize; card++)
+            add(card);
+    }
+
+    /**
+     * @return - the number of cards left in the deck.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Draws a random card from the deck: the card is swapped with the last card and removed.
+     *
+     * @return - the card drawn.
+     *
+     * @pre - size() > 0
+     * @post - the card is no longer in the deck.
+     */
+    public int draw() {
+        int card = cards[random.nextInt(size)];
+        remove(card);
+        return card;
+    }
+
+    /**
+     * Draws cards to fill empty slots on the table. If the cards on the table together with count cards of the deck
+     * can form a legal set, the cards of one such set are drawn first, so the table is sure to have a set after
+     * they are placed. The rest of the cards are drawn at random.
+     *
+     * @param onTable    - the cards on the table.
+     * @param tableCards - the number of cards on the table, starting from onTable[0].
+     * @param count      - the number of cards to draw.
+     * @return - the cards drawn (fewer than count if the deck runs out).
+     */
+    public int[] drawForTable(int[] onTable, int tableCards, int count) {
+        count = Math.min(count, size);
+        int[] drawn = new int[count];
+        int n = 0;
+        if (count > 0 && !env.util.hasSet(onTable, tableCards)) {
+            int[] completion = findCompletion(onTable, tableCards, count);
+            if (completion != null)
+                for (int card : completion)
+                    if (indexOf[card] >= 0) {
+                        remove(card);
+                        drawn[n++] = card;
+                    }
+        }
+        while (n < count)
+            drawn[n++] = draw();
+        return drawn;
+    }
+
+    /**
+     * Finds a legal set made of cards on the table and at most count cards from the deck. The cards on the table
+     * are searched first, so sets that need fewer cards from the deck tend to be found earlier. The sets are searched
+     * lazily (on this thread), so the search stops at the first set that fits.
+     *
+     * @return - the cards of the set, or null if there is none.
+     */
+    private int[] findCompletion(int[] onTable, int tableCards, int count) {
+        int[] candidates = Arrays.copyOf(onTable, tableCards + size);
+        System.arraycopy(cards, 0, candidates, tableCards, size);
+        return env.util.streamSets(candidates, candidates.length)
+                .filter(set -> cardsFromDeck(set) <= count)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private int cardsFromDeck(int[] set) {
+        int fromDeck = 0;
+        for (int card : set)
+            if (indexOf[card] >= 0)
+                fromDeck++;
+        return fromDeck;
+    }
+
+    /**
+     * Removes a specific card from the deck: the card is swapped with the last card and removed.
+     *
+     * @pre - the card is in the deck.
+     */
+    void remove(int card) {
+        int index = indexOf[card];
+        int last = cards[--size];
+        cards[index] = last;
+        indexOf[last] = index;
+        indexOf[card] = -1;
+        if (counting)
+            sets -= env.util.countSetsWith(card, cards, size); // the sets the drawn card was part of
+    }
+
+    /**
+     * Returns a card to a random position in the deck.
+     *
+     * @param card - the card to return.
+     *
+     * @post - the card is in the deck.
+     */
+    public void add(int card) {
+        if (counting)
+            sets += env.util.countSetsWith(card, cards, size); // the sets the returned card completes
+        int index = random.nextInt(size + 1);
+        if (index < size) { // the card that was there moves to the end
+            cards[size] = cards[index];
+            indexOf[cards[size]] = size;
+        }
+        cards[index] = card;
+        indexOf[card] = index;
+        size++;
+    }
+
+    /**
+     * @return - true iff at least one legal set can be formed from the cards left in the deck.
+     */
+    public boolean hasSet() {
+        return counting ? sets > 0 : env.util.hasSet(cards, size);
+    }
+
+    /**
+     * @return - the number of legal sets that can be formed from the cards left in the deck (searched for on every
+     *           call unless featureSize == 3).
+     */
+    public long setCount() {
+        return counting ? sets : env.util.countSets(cards, size);
+    }
+}
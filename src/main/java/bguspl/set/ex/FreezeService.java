@@ -0,0 +1,153 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps track of the frozen players (after a point or a penalty), on a single clock: the time each player is frozen
+ * until. The dealer freezes players and advances the service, which updates each player's freeze display only when
+ * the displayed second changes and wakes the players whose freeze expired. The players block in awaitUnfrozen.
+ * The display updates of all the players are kept in one timer wheel, so each one costs O(1) however many players
+ * are frozen.
+ */
+public class FreezeService {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The time (in milliseconds) each player is frozen until, 0 if the player was never frozen.
+     */
+    private final AtomicLongArray frozenUntil;
+
+    /**
+     * The next display update of each frozen player (guarded by wheelLock).
+     */
+    private final TimerWheel wheel;
+
+    /**
+     * Guards the wheel (taken by the players' threads too, see PreValidateClaims and PlayerThreadFactory).
+     */
+    private final ReentrantLock wheelLock;
+
+    /**
+     * The locks of the players' waits while they are frozen.
+     */
+    private final ReentrantLock[] locks;
+
+    /**
+     * Signalled when a player's freeze expires.
+     */
+    private final Condition[] unfrozen;
+
+    public FreezeService(Env env, int players) {
+        this.env = env;
+        this.frozenUntil = new AtomicLongArray(players);
+        this.wheel = new TimerWheel(players, env.clock.currentTimeMillis());
+        this.wheelLock = new ReentrantLock();
+        this.locks = new ReentrantLock[players];
+        this.unfrozen = new Condition[players];
+        for (int i = 0; i < players; ++i) {
+            locks[i] = new ReentrantLock();
+            unfrozen[i] = locks[i].newCondition();
+        }
+    }
+
+    /**
+     * Freezes a player (replacing his current freeze, if any) and shows it.
+     *
+     * @param player - the id of the player.
+     * @param millis - the duration of the freeze.
+     */
+    public void freeze(int player, long millis) {
+        wheelLock.lock();
+        try {
+            long now = env.clock.currentTimeMillis();
+            frozenUntil.set(player, now + millis);
+            update(player, now);
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+    /**
+     * @return - true iff the player is frozen.
+     */
+    public boolean isFrozen(int player) {
+        return frozenUntil.get(player) > env.clock.currentTimeMillis();
+    }
+
+    /**
+     * Blocks until the player is not frozen. Does not depend on the service being advanced, so the player is never
+     * held longer than his freeze.
+     *
+     * @param player - the id of the player.
+     */
+    public void awaitUnfrozen(int player) throws InterruptedException {
+        if (!isFrozen(player))
+            return;
+        ReentrantLock lock = locks[player];
+        lock.lock();
+        try {
+            for (long left = frozenUntil.get(player) - env.clock.currentTimeMillis(); left > 0;
+                 left = frozenUntil.get(player) - env.clock.currentTimeMillis())
+                unfrozen[player].awaitNanos(env.clock.toNanos(left));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Updates the freeze displays that are due and wakes the players whose freeze expired.
+     *
+     * @param now - the current time (in milliseconds).
+     */
+    public void advance(long now) {
+        wheelLock.lock();
+        try {
+            wheel.advance(now, player -> update(player, now));
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+    /**
+     * @return - the next time (in milliseconds) the service should be advanced, Long.MAX_VALUE if no player is frozen.
+     */
+    public long nextDeadline() {
+        wheelLock.lock();
+        try {
+            return wheel.nextDeadline();
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+    /**
+     * Shows the time the player is still frozen for (rounded up to a second) and schedules the next change of the
+     * display, or shows 0 and wakes the player if the freeze expired. Called while holding wheelLock.
+     */
+    private void update(int player, long now) {
+        long until = frozenUntil.get(player);
+        long timeLeft = (until - now + 999) / 1000 * 1000;
+        if (until > now) {
+            env.ui.setFreeze(player, timeLeft);
+            // the display changes when the time left drops to the second below
+            wheel.schedule(player, until - (timeLeft - 1000));
+        } else {
+            env.ui.setFreeze(player, 0);
+            ReentrantLock lock = locks[player];
+            lock.lock();
+            try {
+                unfrozen[player].signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
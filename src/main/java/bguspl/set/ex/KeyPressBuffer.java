@@ -0,0 +1,259 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded ring buffer of the slots of a player's key presses, with a single producer (the ui thread or the
+ * computer player's thread) and a single consumer (the player's thread). Nothing is allocated per key press, and
+ * offering a key press never blocks: when the buffer is full, the overflow policy decides which press is lost.
+ * Each entry holds its position in the stream of presses together with its slot, so a CAS on an entry cannot
+ * confuse two presses that used the same place in the ring.
+ */
+public class KeyPressBuffer {
+
+    /**
+     * What to do with a key press that arrives when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The new key press is dropped.
+         */
+        DROP_NEWEST,
+        /**
+         * The oldest key press in the buffer is dropped to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * A new press of a slot already pressed in the buffer cancels that press (two toggles of a token are none),
+         * otherwise the new key press is dropped.
+         */
+        COALESCE_TOGGLES;
+
+        /**
+         * @return - the policy with the given name (case insensitive), null if there is none.
+         */
+        public static OverflowPolicy parse(String name) {
+            for (OverflowPolicy policy : values())
+                if (policy.name().equalsIgnoreCase(name.trim()))
+                    return policy;
+            return null;
+        }
+    }
+
+    private static final int SLOT_BITS = 20;
+    private static final long SLOT_MASK = (1L << SLOT_BITS) - 1;
+
+    /**
+     * The slot value of an entry that was taken, dropped or cancelled.
+     */
+    private static final long TAKEN = SLOT_MASK;
+
+    private final OverflowPolicy policy;
+    private final int capacity;
+
+    /**
+     * The entries, each is (position << SLOT_BITS) | slot.
+     */
+    private final AtomicLongArray entries;
+
+    /**
+     * The position of the next entry to take (advanced by the consumer, and by the producer when dropping the oldest).
+     */
+    private final AtomicLong head;
+
+    /**
+     * The position of the next entry to offer (advanced only by the producer).
+     */
+    private final AtomicLong tail;
+
+    /**
+     * The number of key presses lost to overflow (including the presses cancelled by coalescing).
+     */
+    private final AtomicLong dropped;
+
+    /**
+     * The threads blocked on the buffer, if any.
+     */
+    private volatile Thread consumer, producer;
+
+    /**
+     * @param capacity - the number of key presses the buffer holds.
+     * @param policy   - what to do with a key press that arrives when the buffer is full.
+     */
+    public KeyPressBuffer(int capacity, OverflowPolicy policy) {
+        this.policy = policy;
+        this.capacity = Math.max(1, capacity);
+        this.entries = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; ++i)
+            entries.set(i, entry(i - this.capacity, TAKEN));
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.dropped = new AtomicLong();
+    }
+
+    private static long entry(long position, long slot) {
+        return position << SLOT_BITS | slot;
+    }
+
+    private int index(long position) {
+        return (int) (position % capacity);
+    }
+
+    /**
+     * Adds a key press (called by the producer only). Never blocks.
+     *
+     * @param slot - the slot of the key pressed.
+     * @return - true iff the key press was added.
+     */
+    public boolean offer(int slot) {
+        long t = tail.get();
+        if (t - head.get() >= capacity) {
+            switch (policy) {
+                case DROP_OLDEST:
+                    dropOldest(t);
+                    break;
+                case COALESCE_TOGGLES:
+                    if (cancel(slot, t))
+                        dropped.addAndGet(2);
+                    else
+                        dropped.incrementAndGet();
+                    return false;
+                default:
+                    dropped.incrementAndGet();
+                    return false;
+            }
+        }
+        entries.set(index(t), entry(t, slot));
+        tail.set(t + 1);
+        Thread waiting = consumer;
+        if (waiting != null)
+            LockSupport.unpark(waiting);
+        return true;
+    }
+
+    /**
+     * Drops entries from the head until there is room for the entry at position t.
+     */
+    private void dropOldest(long t) {
+        for (long h = head.get(); t - h >= capacity; h = head.get()) {
+            int i = index(h);
+            long e = entries.get(i);
+            if (e == entry(h, e & SLOT_MASK) && (e & SLOT_MASK) != TAKEN && entries.compareAndSet(i, e, entry(h, TAKEN)))
+                dropped.incrementAndGet();
+            head.compareAndSet(h, h + 1);
+        }
+    }
+
+    /**
+     * Cancels a pending press of a slot, if there is one before position t.
+     *
+     * @return - true iff a press was cancelled.
+     */
+    private boolean cancel(int slot, long t) {
+        for (long p = head.get(); p < t; ++p) {
+            int i = index(p);
+            long e = entries.get(i);
+            if (e == entry(p, slot) && entries.compareAndSet(i, e, entry(p, TAKEN)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes the oldest key press (called by the consumer only).
+     *
+     * @return - the slot of the key press, or -1 if there is none.
+     */
+    public int poll() {
+        for (;;) {
+            long h = head.get();
+            if (h == tail.get())
+                return -1;
+            int i = index(h);
+            long e = entries.get(i);
+            long slot = e & SLOT_MASK;
+            if (e == entry(h, slot) && slot != TAKEN && entries.compareAndSet(i, e, entry(h, TAKEN))) {
+                head.compareAndSet(h, h + 1);
+                wakeProducer();
+                return (int) slot;
+            }
+            // the entry was dropped, cancelled, or is no longer at the head
+            head.compareAndSet(h, h + 1);
+        }
+    }
+
+    /**
+     * Takes the oldest key press, blocking until there is one (called by the consumer only).
+     *
+     * @return - the slot of the key press.
+     */
+    public int take() throws InterruptedException {
+        consumer = Thread.currentThread();
+        try {
+            for (int slot = poll(); ; slot = poll()) {
+                if (slot >= 0)
+                    return slot;
+                if (isEmpty())
+                    LockSupport.park(this);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        } finally {
+            consumer = null;
+        }
+    }
+
+    /**
+     * Blocks until the buffer is not full (called by the producer only, when it may wait, e.g. a computer player).
+     */
+    public void awaitNotFull() throws InterruptedException {
+        producer = Thread.currentThread();
+        try {
+            while (tail.get() - head.get() >= capacity) {
+                LockSupport.park(this);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        } finally {
+            producer = null;
+        }
+    }
+
+    private void wakeProducer() {
+        Thread waiting = producer;
+        if (waiting != null)
+            LockSupport.unpark(waiting);
+    }
+
+    /**
+     * Removes all the key presses (called by the consumer only).
+     */
+    public void clear() {
+        while (poll() >= 0) ;
+        wakeProducer();
+    }
+
+    /**
+     * @return - true iff the buffer has no entries. The entries of dropped or cancelled key presses count until poll
+     * skips them, so the buffer may hold no key press to take while this is false.
+     */
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * @return - the number of key presses the buffer holds.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return - the number of key presses lost to overflow.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+}
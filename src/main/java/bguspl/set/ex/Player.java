@@ -2,7 +2,9 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 /**
  * This class manages the players' threads and data
  *
@@ -34,7 +36,7 @@ public class Player implements Runnable {
     /**
      * The thread of the AI (computer) player (an additional thread used to generate key presses).
      */
-    private Thread aiThread;
+    private volatile Thread aiThread;
 
     /**
      * True iff the player is human (not a computer player).
@@ -52,26 +54,40 @@ public class Player implements Runnable {
     private int score;
     //--------------------------------------------------------------- added by me ---------------------------------------------------------------
     /**
-     * The queue maintaining the incoming key presses, size = legel set size(3).
+     * The buffer maintaining the incoming key presses, size = legel set size(3).
      */
-    private ArrayBlockingQueue<Integer> keyPresses;
+    private final KeyPressBuffer keyPresses;
     /**
      * The dealer object.
      */
     private final Dealer dealer;
     /**
-     * The time the player has finished his turn and the dealer has been notified.
-     * for cases the player not finished yet the value is -1;
+     * The ticket of the player's set claim (see ClaimQueue) while the dealer has not checked it yet.
+     * for cases the player not finished yet the value is -1, and -2 if the set was checked and was not legal;
      */
-    private long timeOfSetComplition;
+    private volatile long timeOfSetComplition;
     /**
-     * True iff the key presses are blocked.
+     * Guards the wait for the dealer's verdict (see PlayerThreadFactory for why it is not the player's monitor).
      */
-    private boolean isSleaping;
+    private final ReentrantLock verdictLock;
     /**
-     * The duration of the sleep.
+     * Signalled when the dealer checks or voids the player's claim, or applies his key press.
      */
-    private long sleepDuration;
+    private final Condition verdictGiven;
+    /**
+     * The number of key presses the player posted to the dealer, and the number the dealer applied (actor execution
+     * model only).
+     */
+    private long keyPressesPosted;
+    private volatile long keyPressesApplied;
+    /**
+     * The number of the player's sets that failed the check on his own thread (see PreValidateClaims).
+     */
+    private volatile long localPenalties;
+    /**
+     * The service the player waits on while he is frozen.
+     */
+    private final FreezeService freezes;
     /**
      * The class constructor.
      *
@@ -90,10 +106,16 @@ public class Player implements Runnable {
         this.score = 0;
         this.terminate = false;
         this.timeOfSetComplition = -1;
-        this.isSleaping = true;
-        this.sleepDuration =env.config.tableDelayMillis*env.config.tableSize;
-        //using a queue to maintain the incoming key presses , implemented as a linked list
-        this.keyPresses = new ArrayBlockingQueue<Integer>(env.config.featureSize);
+        this.verdictLock = new ReentrantLock();
+        this.verdictGiven = verdictLock.newCondition();
+        this.freezes = dealer.getFreezes();
+        //using a ring buffer to maintain the incoming key presses, so pressing a key never blocks the ui
+        KeyPressBuffer.OverflowPolicy policy = KeyPressBuffer.OverflowPolicy.parse(env.config.keyPressOverflow);
+        if (policy == null) {
+            env.logger.severe("invalid key press overflow policy: " + env.config.keyPressOverflow + ", using DROP_NEWEST");
+            policy = KeyPressBuffer.OverflowPolicy.DROP_NEWEST;
+        }
+        this.keyPresses = new KeyPressBuffer(env.config.featureSize, policy);
     }
 
     /**
@@ -104,82 +126,163 @@ public class Player implements Runnable {
         playerThread = Thread.currentThread();
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
         if (!human) createArtificialIntelligence();
+        // the player blocks until something happens: the end of a freeze, the dealer's verdict on a claim, or a key press
         while (!terminate) {
-            if(isSleaping)
-            {
-                try {
-                    Thread.sleep(sleepDuration);
-                    isSleaping = false;
-                    sleepDuration = 0;
-                } catch (InterruptedException ignored) {}
-            }
-            if (keyPresses.size() > 0 && table.getTokensNumberByPlayer(id) < env.config.featureSize)
-            {
-                //it need to check if this player has a token in the slot and remove it if its has one, otherwise put a token in the slot
-                int slot= keyPresses.poll();
-                synchronized(table)
+            try {
+                freezes.awaitUnfrozen(id);
+                if (timeOfSetComplition > 0)
                 {
-                    if(!dealer.getTerminate() && table.slotToCard[slot]!=null && !table.removeToken(id,slot))
-                        table.placeToken(id,slot);
-                } 
-            }
-            if (table.getTokensNumberByPlayer(id) == env.config.featureSize && timeOfSetComplition == -2)
-            {
-                Integer slot= keyPresses.peek();
-                try{
-                    slot=keyPresses.take();
-                }catch (InterruptedException ignored) {}
-                //allows only to remove one token
-                synchronized(table){
-                    if(slot != null && table.slotToCard[slot]!=null &&table.removeToken(id,slot))
-                        timeOfSetComplition = -1;
+                    awaitVerdict();
+                    keyPresses.clear();
                 }
-                
-            }
-            if(table.getTokensNumberByPlayer(id) == env.config.featureSize && timeOfSetComplition == -1)
-            {
-                this.timeOfSetComplition = System.currentTimeMillis();
-                isSleaping = true;
-                synchronized (dealer) {
-                    dealer.getThread().interrupt();
+                // in the actor model the dealer applies the key presses and claims the sets itself
+                else if (env.config.actorDealer)
+                    postKeyPress(keyPresses.take());
+                else if (table.getTokensNumberByPlayer(id) == env.config.featureSize && timeOfSetComplition == -1)
+                {
+                    if (env.config.preValidateClaims && isNotASet(table.snapshot()))
+                        penalizeLocally();
+                    else
+                        dealer.claimSet(this);
                 }
-                synchronized (this) { 
-                    try {
-                        if(timeOfSetComplition >0)
-                            this.wait();
-                    } catch (InterruptedException ignored) {}                }
-                keyPresses.clear();
-            } 
-            
-                
-            
+                else
+                    handleKeyPress(keyPresses.take());
+            } catch (InterruptedException ignored) {}
         }
-        if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
+        // the dealer's interrupt may come while the player waits here, the computer thread is still waited for
+        while (!human && aiThread.isAlive())
+            try { aiThread.join(); } catch (InterruptedException ignored) {}
+        if (keyPresses.dropped() > 0)
+            env.logger.info("player " + id + " dropped " + keyPresses.dropped() + " key presses.");
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
 
+    /**
+     * Places or removes a token according to a key press.
+     *
+     * @param slot - the slot corresponding to the key pressed.
+     */
+    private void handleKeyPress(int slot) {
+        if (dealer.getTerminate())
+            return;
+        //it need to check if this player has a token in the slot and remove it if its has one, otherwise put a token in the slot
+        if (table.getTokensNumberByPlayer(id) < env.config.featureSize)
+            table.toggleToken(id, slot);
+        //after a penalty the player has all his tokens, it allows only to remove one token
+        else if (table.removeToken(id, slot))
+            timeOfSetComplition = -1;
+    }
+
+    /**
+     * Posts a key press to the dealer without waiting for him to apply it (actor execution model only). The player
+     * waits only while he has as many key presses in the dealer's mailbox as his key presses buffer holds, so the
+     * mailbox stays bounded and the dealer applies a burst of key presses in one wakeup.
+     *
+     * @param slot - the slot corresponding to the key pressed.
+     */
+    private void postKeyPress(int slot) throws InterruptedException {
+        if (keyPressesPosted - keyPressesApplied >= keyPresses.capacity()) {
+            verdictLock.lock();
+            try {
+                while (keyPressesPosted - keyPressesApplied >= keyPresses.capacity() && !terminate)
+                    verdictGiven.await();
+            } finally {
+                verdictLock.unlock();
+            }
+        }
+        ++keyPressesPosted;
+        dealer.postKeyPress(id, slot);
+    }
+
+    /**
+     * Counts a key press of the player the dealer applied, and wakes the player up if he waits for room in the
+     * dealer's mailbox (actor execution model only). Called by the dealer's thread only.
+     */
+    public void keyPressApplied() {
+        verdictLock.lock();
+        try {
+            keyPressesApplied++;
+            verdictGiven.signalAll();
+        } finally {
+            verdictLock.unlock();
+        }
+    }
+
+    /**
+     * Checks the player's tokens against a snapshot of the table, before claiming a set.
+     *
+     * @param snapshot - the table to check the tokens against.
+     * @return - true iff the player has a token on each of featureSize cards and the cards are not a legal set.
+     */
+    boolean isNotASet(TableSnapshot snapshot) {
+        int[] slots = snapshot.tokens(id);
+        if (slots.length != env.config.featureSize)
+            return false;
+        int[] cards = new int[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            cards[i] = snapshot.card(slots[i]);
+            if (cards[i] < 0)
+                return false; // the table is changing, let the dealer judge
+        }
+        return !env.util.testSet(cards);
+    }
+
+    /**
+     * Penalizes the player for a set that failed the check on his own thread, the same way the dealer would.
+     */
+    private void penalizeLocally() {
+        timeOfSetComplition = -2;
+        localPenalties++;
+        penalty();
+        // the dealer updates the freeze display, it is woken up only if it sleeps past the next update
+        dealer.wakeUpBefore(freezes.nextDeadline());
+    }
+
+    /**
+     * Waits until the dealer checks the player's claim (or voids it).
+     */
+    private void awaitVerdict() throws InterruptedException {
+        verdictLock.lock();
+        try {
+            while (timeOfSetComplition > 0 && !terminate)
+                verdictGiven.await();
+        } finally {
+            verdictLock.unlock();
+        }
+    }
+
+    /**
+     * Wakes the player up after the dealer checked or voided his claim (called after timeOfSetComplition is updated).
+     */
+    public void notifyVerdict() {
+        verdictLock.lock();
+        try {
+            verdictGiven.signalAll();
+        } finally {
+            verdictLock.unlock();
+        }
+    }
+
     /**
      * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
      * key presses. If the queue of key presses is full, the thread waits until it is not full.
      */
     private void createArtificialIntelligence() {
         // note: this is a very, very smart AI (!)
-        aiThread = new Thread(() -> {
+        aiThread = dealer.getThreadFactory().newThread(() -> {
             env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
             while (!terminate) {
-                //if the player is sleaping the computer should sleep too
-                if (isSleaping){
-                    try {
-                        Thread.sleep(sleepDuration);
-                        isSleaping = false;
-                        sleepDuration = 0;
-                    } catch (InterruptedException ignored) {}
-                }
-                if (keyPresses.size() < env.config.featureSize) {
-                     //The slot number is: 𝒄𝒐𝒍𝒖𝒎𝒏 + 𝒕𝒐𝒕𝒂𝒍 𝒄𝒐𝒍𝒖𝒎𝒏𝒔 ∗ 𝒓𝒐w so generating random slot
-                    int genSlot = (int) (Math.random() * env.config.columns) + (int) (Math.random() * env.config.rows) * env.config.columns;
-                    keyPressed(genSlot);
+                //if the player is frozen the computer should wait too
+                try {
+                    freezes.awaitUnfrozen(id);
+                    keyPresses.awaitNotFull();
+                } catch (InterruptedException ignored) {
+                    continue; // interrupted on termination, the interrupt is used up so nothing else would wake it
                 }
+                //The slot number is: 𝒄𝒐𝒍𝒖𝒎𝒏 + 𝒕𝒐𝒕𝒂𝒍 𝒄𝒐𝒍𝒖𝒎𝒏𝒔 ∗ 𝒓𝒐w so generating random slot
+                int genSlot = ThreadLocalRandom.current().nextInt(env.config.columns) + ThreadLocalRandom.current().nextInt(env.config.rows) * env.config.columns;
+                keyPressed(genSlot);
+
             }
             env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
         }, "computer-" + id);
@@ -191,12 +294,9 @@ public class Player implements Runnable {
      */
     public void terminate() {
         terminate = true;
-        if (!human)
-            try{
-                aiThread.interrupt();
-                aiThread.join();
-            }
-            catch (InterruptedException ignored) {}
+        Thread ai = aiThread;
+        if (!human && ai != null)
+            ai.interrupt(); // the player's thread joins it before it ends
     }
 
     /**
@@ -205,9 +305,7 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
-        try {
-            keyPresses.put(slot);
-        } catch (InterruptedException e) {}
+        keyPresses.offer(slot); // never blocks, a key press that does not fit is dropped (see KeyPressBuffer)
     }
 
     /**
@@ -215,20 +313,21 @@ public class Player implements Runnable {
      *
      * @post - the player's score is increased by 1.
      * @post - the player's score is updated in the ui.
+     * @post - the player is frozen for the point freeze time.
      */
     public void point() {
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, ++score);
-        setSleap(env.config.pointFreezeMillis);
+        freezes.freeze(id, env.config.pointFreezeMillis);
     }
 
     /**
      * Penalize a player and perform other related actions.
+     *
+     * @post - the player is frozen for the penalty freeze time.
      */
     public void penalty() {
-        // penalizing the player by making the thread sleep for a certain time
-       setSleap(env.config.penaltyFreezeMillis);
-        
+        freezes.freeze(id, env.config.penaltyFreezeMillis);
     }
 
     public int score() {
@@ -238,29 +337,34 @@ public class Player implements Runnable {
 
 //----------------------------------added by me----------------------------------
     /**
-     * @return the time the player has finished his turn.
+     * @return the ticket of the player's set claim, -1 if there is none, -2 if it was not legal.
      */
     public long getTimeOfSetComplition(){
         return timeOfSetComplition;
     }
     /**
-     * set the time the player has finished his turn.
-     * @param time - the time the player has finished his turn.
+     * set the ticket of the player's set claim.
+     * @param time - the ticket of the claim, -1 if there is none, -2 if it was not legal.
      */
     public void setTimeOfSetComplition(long time){
         timeOfSetComplition = time;
     }
     /**
-     * @return the player thread.
+     * @return the number of key presses dropped because too many were waiting.
      */
-    public Thread getPlayerThread(){
-        return playerThread;
+    public long getDroppedKeyPresses(){
+        return keyPresses.dropped();
+    }
+    /**
+     * @return the number of the player's sets that failed the check on his own thread.
+     */
+    public long getLocalPenalties(){
+        return localPenalties;
     }
     /**
-     *make player sleep for a certain time.
+     * @return the player thread.
      */
-    public void setSleap(long duration){
-        isSleaping = true;
-        sleepDuration+= duration;
+    public Thread getPlayerThread(){
+        return playerThread;
     }
 }
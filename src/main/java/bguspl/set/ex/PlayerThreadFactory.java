@@ -0,0 +1,71 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates the threads of the players and of the computer players' input, as platform threads or as virtual threads
+ * (by the ThreadingModel setting). Virtual threads are cheap enough for thousands of players in one JVM; they are
+ * created by reflection, so the game still runs (on platform threads) on a JVM without them.
+ * <p>
+ * The code the players' threads run takes ReentrantLocks rather than monitors (the table's slot locks, the freeze
+ * service and the players' verdict waits): a virtual thread that blocks while holding a monitor pins its carrier
+ * thread, so a few blocked players could stall all the others.
+ */
+public class PlayerThreadFactory {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * Thread.ofVirtual, Thread.Builder.name and Thread.Builder.unstarted, null if virtual threads are not used.
+     */
+    private final Method ofVirtual, name, unstarted;
+
+    public PlayerThreadFactory(Env env) {
+        this.env = env;
+        Method ofVirtual = null, name = null, unstarted = null;
+        if (env.config.virtualThreads) {
+            try {
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                name = builder.getMethod("name", String.class);
+                unstarted = builder.getMethod("unstarted", Runnable.class);
+            } catch (ReflectiveOperationException e) {
+                env.logger.severe("virtual threads are not supported by this JVM, using platform threads");
+                ofVirtual = name = unstarted = null;
+            }
+        }
+        this.ofVirtual = ofVirtual;
+        this.name = name;
+        this.unstarted = unstarted;
+    }
+
+    /**
+     * @return - true iff the threads created are virtual threads.
+     */
+    public boolean isVirtual() {
+        return ofVirtual != null;
+    }
+
+    /**
+     * Creates a thread (not started yet).
+     *
+     * @param task       - the code the thread runs.
+     * @param threadName - the name of the thread.
+     * @return - the thread.
+     */
+    public Thread newThread(Runnable task, String threadName) {
+        if (ofVirtual != null) {
+            try {
+                return (Thread) unstarted.invoke(name.invoke(ofVirtual.invoke(null), threadName), task);
+            } catch (ReflectiveOperationException e) {
+                env.logger.severe("error creating a virtual thread: " + e + ", using a platform thread");
+            }
+        }
+        return new Thread(task, threadName);
+    }
+}
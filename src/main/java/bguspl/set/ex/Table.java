@@ -2,15 +2,29 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /**
  * This class contains the data that is visible to the player.
+ * Each slot has its own lock, so operations on different slots proceed in parallel. A slot's card changes only under
+ * the slot's lock. The tokens are kept as bitsets (the players on each slot and the slots of each player) updated
+ * with CAS, so placing, removing and counting tokens take no lock; the operations that depend on the card in the slot
+ * (toggleToken and removeCard) take the slot's lock.
+ * Placing and removing cards changes the table at once; showing the change (the artificial table delay and the ui
+ * update) is left to a presentation thread that plays the changes one after the other, so the game logic never waits
+ * on the delay. Players can only put tokens on cards that are already shown.
+ * Every card change also publishes a new immutable snapshot of the cards (see TableSnapshot), for the readers that need
+ * a consistent view without locking. Token changes publish nothing, the snapshots read the tokens from the bitsets.
  *
  * @inv slotToCard[x] == y iff cardToSlot[y] == x
  */
@@ -31,13 +45,42 @@ public class Table {
      */
     protected final Integer[] cardToSlot; // slot per card (if any)
     /**
-     * The ids of the players that put tokens on each slot.
+     * The lock of each slot (taken by the players' threads, see PlayerThreadFactory).
      */
-    private LinkedList<Integer> [] tokensPerSlot;
+    private final ReentrantLock[] slotLocks;
     /**
-     * The slots of the tokens that each player has on the table.
+     * The ids of the players that put tokens on each slot (a row of player bits per slot).
      */
-    private LinkedList<Integer> [] tokensPerPlayer;
+    private final AtomicBitMatrix tokensPerSlot;
+    /**
+     * The slots of the tokens that each player has on the table (a row of slot bits per player).
+     */
+    private final AtomicBitMatrix tokensPerPlayer;
+    /**
+     * The legal sets formed by the cards currently on the table, updated on every card placement and removal.
+     * Guarded by its own monitor.
+     */
+    private final List<int[]> setsOnTable;
+    /**
+     * The snapshot of the table after the last card change.
+     */
+    private final AtomicReference<TableSnapshot> snapshot;
+    /**
+     * Scratch array for the cards currently on the table, used to update the sets index.
+     */
+    private final int[] cardsOnTable;
+    /**
+     * The number of changes of each slot that are not shown yet.
+     */
+    private final AtomicIntegerArray unshownChanges;
+    /**
+     * The card changes waiting to be shown, null if they are shown at once (no table delay).
+     */
+    private final BlockingQueue<int[]> presentations;
+    /**
+     * The thread that shows the card changes, null if it is not running (see startPresentation).
+     */
+    private Thread presenter;
 
     /**
      * Constructor for testing.
@@ -50,15 +93,30 @@ public class Table {
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
+        this.slotLocks = new ReentrantLock[env.config.tableSize];
+        for (int i = 0; i < env.config.tableSize; i++)
+            slotLocks[i] = new ReentrantLock();
         //initialized the size to table size
-        this.tokensPerSlot = new LinkedList[env.config.tableSize];
+        this.tokensPerSlot = new AtomicBitMatrix(env.config.tableSize, env.config.players);
+        this.tokensPerPlayer = new AtomicBitMatrix(env.config.players, env.config.tableSize);
+        this.setsOnTable = new ArrayList<>();
+        this.cardsOnTable = new int[env.config.tableSize];
+        // the cards already on the table (if any) are indexed like cards placed later
+        int[] initialSlots = new int[env.config.tableSize];
+        int cards = 0;
         for (int i = 0; i < env.config.tableSize; i++)
-            tokensPerSlot[i] = new LinkedList<Integer>();
-        this.tokensPerPlayer = new LinkedList[env.config.players];
-        
-        for (int i = 0; i < env.config.players; i++) {
-            tokensPerPlayer[i] = new LinkedList<Integer>();
-        }
+            if (slotToCard[i] != null) {
+                initialSlots[cards] = i;
+                cardsOnTable[cards++] = slotToCard[i];
+            }
+        env.util.findSets(cardsOnTable, cards, Integer.MAX_VALUE, set -> setsOnTable.add(set.clone()));
+        TableSnapshot initial = TableSnapshot.empty(env.config.tableSize, tokensPerPlayer);
+        if (cards > 0)
+            initial = initial.withCards(Arrays.copyOf(initialSlots, cards), Arrays.copyOf(cardsOnTable, cards),
+                    setsOnTable.toArray(new int[0][]));
+        this.snapshot = new AtomicReference<>(initial);
+        this.unshownChanges = new AtomicIntegerArray(env.config.tableSize);
+        this.presentations = env.config.tableDelayMillis > 0 ? new LinkedBlockingQueue<>() : null;
     }
     
 
@@ -76,13 +134,31 @@ public class Table {
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        TableSnapshot current = snapshot.get();
+        for (int i = 0; i < current.countSets(); i++) {
+            int[] set = current.set(i);
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
+            List<Integer> slots = Arrays.stream(set).mapToObj(card -> slotOf(current, card)).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
             System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
-        });
+        }
+    }
+
+    private static int slotOf(TableSnapshot snapshot, int card) {
+        int slot = 0;
+        while (snapshot.card(slot) != card)
+            slot++;
+        return slot;
+    }
+
+    /**
+     * Returns a consistent view of the cards after the last card change, without locking (see TableSnapshot for the
+     * tokens).
+     *
+     * @return - the snapshot of the table.
+     */
+    public TableSnapshot snapshot() {
+        return snapshot.get();
     }
 
     /**
@@ -105,36 +181,223 @@ public class Table {
      *
      * @post - the card placed is on the table, in the assigned slot.
      */
-    public synchronized void placeCard(int card, int slot) {
+    public void placeCard(int card, int slot) {
+        slotLocks[slot].lock();
         try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
-
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
+            unshownChanges.incrementAndGet(slot); // before the card is published, so no one acts on it before it is shown
+            cardToSlot[card] = slot;
+            slotToCard[slot] = card;
+            synchronized (setsOnTable) {
+                // only the sets that include the new card need to be added to the index
+                int cards = 0;
+                for (Integer other : slotToCard)
+                    if (other != null)
+                        cardsOnTable[cards++] = other;
+                env.util.findSetsWith(card, cardsOnTable, cards, set -> setsOnTable.add(set.clone()));
+                int[][] sets = setsOnTable.toArray(new int[0][]);
+                snapshot.updateAndGet(current -> current.withCard(slot, card, sets));
+            }
+        } finally {
+            slotLocks[slot].unlock();
+        }
 
-        // TODO implement
-        env.ui.placeCard(card, slot);
+        show(slot, card);
     }
 
     /**
-     * Removes a card from a grid slot on the table.
+     * Removes a card from a grid slot on the table, together with the tokens on it.
      * @param slot - the slot from which to remove the card.
+     * @return     - the ids of the players whose tokens were on the slot.
      */
-    public synchronized void removeCard(int slot) {
+    public List<Integer> removeCard(int slot) {
+        List<Integer> players;
+        int card;
+        slotLocks[slot].lock();
         try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
-        //removing all the tokens used by the players on this slot
-        tokensPerSlot[slot].clear();
-        for (int id=0;id<env.config.players;id++) {
-            if(tokensPerPlayer[id].remove((Integer)slot));
+            unshownChanges.incrementAndGet(slot);
+            //removing all the tokens used by the players on this slot
+            players = tokensPerSlot.clearRow(slot);
+            for (int id : players) {
+                tokensPerPlayer.clear(id, slot);
                 env.ui.removeToken(id, slot);
+            }
+            card = slotToCard[slot];
+            cardToSlot[card] = null;
+            slotToCard[slot] = null;
+            synchronized (setsOnTable) {
+                setsOnTable.removeIf(set -> contains(set, card));
+                int[][] sets = setsOnTable.toArray(new int[0][]);
+                snapshot.updateAndGet(current -> current.withCard(slot, -1, sets));
+            }
+        } finally {
+            slotLocks[slot].unlock();
         }
-        cardToSlot[slotToCard[slot]] = null;
-        slotToCard[slot] = null;
-        
-        env.ui.removeCard(slot);
+
+        show(slot, -1);
+        return players;
+    }
+
+    /**
+     * Places cards on the table in empty grid slots, as a single change: the slots are locked together, the sets index
+     * is updated once for all the new cards and one snapshot is published.
+     * @param cards - the card ids to place.
+     * @param slots - the empty slots in which the cards should be placed (cards[i] in slots[i]).
+     *
+     * @post - the cards placed are on the table, in the assigned slots.
+     */
+    public void placeCards(int[] cards, int[] slots) {
+        if (slots.length == 0)
+            return; // nothing changes, so no snapshot is published
+        withSlotLocks(slots, 0, () -> {
+            for (int i = 0; i < slots.length; i++) {
+                unshownChanges.incrementAndGet(slots[i]);
+                cardToSlot[cards[i]] = slots[i];
+                slotToCard[slots[i]] = cards[i];
+            }
+            synchronized (setsOnTable) {
+                // each new set is found once, when the last of its new cards is added
+                int count = 0;
+                for (int slot = 0; slot < slotToCard.length; slot++)
+                    if (slotToCard[slot] != null && !contains(slots, slot))
+                        cardsOnTable[count++] = slotToCard[slot];
+                for (int card : cards) {
+                    cardsOnTable[count++] = card;
+                    env.util.findSetsWith(card, cardsOnTable, count, set -> setsOnTable.add(set.clone()));
+                }
+                int[][] sets = setsOnTable.toArray(new int[0][]);
+                snapshot.updateAndGet(current -> current.withCards(slots, cards, sets));
+            }
+        });
+
+        for (int i = 0; i < slots.length; i++)
+            show(slots[i], cards[i]);
+    }
+
+    /**
+     * Removes all the cards from the table, together with all the tokens, as a single change: all the slots are locked
+     * together, the tokens are wiped in one pass and one snapshot is published.
+     * @return - the cards that were on the table.
+     */
+    public List<Integer> removeAllCards() {
+        List<Integer> cards = new ArrayList<>();
+        boolean[] hadCard = new boolean[slotToCard.length];
+        int[] slots = new int[slotToCard.length];
+        for (int i = 0; i < slots.length; i++)
+            slots[i] = i;
+        withSlotLocks(slots, 0, () -> {
+            for (int slot : slots)
+                tokensPerSlot.clearRow(slot);
+            for (int player = 0; player < env.config.players; player++)
+                tokensPerPlayer.clearRow(player);
+            env.ui.removeTokens();
+            int[] removed = new int[slots.length];
+            for (int slot : slots) {
+                Integer card = slotToCard[slot];
+                removed[slot] = -1;
+                if (card != null) {
+                    hadCard[slot] = true;
+                    unshownChanges.incrementAndGet(slot);
+                    cards.add(card);
+                    cardToSlot[card] = null;
+                    slotToCard[slot] = null;
+                }
+            }
+            synchronized (setsOnTable) {
+                setsOnTable.clear();
+                snapshot.updateAndGet(current -> current.withCards(slots, removed, new int[0][]));
+            }
+        });
+
+        for (int slot : slots)
+            if (hadCard[slot])
+                show(slot, -1);
+        return cards;
+    }
+
+    /**
+     * Runs an action while holding the locks of the slots from the i-th on (in the given order, which must be
+     * ascending so that no two threads lock the same slots in opposite orders).
+     */
+    private void withSlotLocks(int[] slots, int i, Runnable action) {
+        if (i == slots.length) {
+            action.run();
+            return;
+        }
+        slotLocks[slots[i]].lock();
+        try {
+            withSlotLocks(slots, i + 1, action);
+        } finally {
+            slotLocks[slots[i]].unlock();
+        }
+    }
+
+    /**
+     * Shows a card change (counted in unshownChanges under the slot's lock): at once if there is no table delay,
+     * otherwise by the presentation thread after the changes before it.
+     * @param slot - the slot that changed.
+     * @param card - the card placed in the slot, -1 if the card was removed.
+     */
+    private void show(int slot, int card) {
+        if (presentations == null)
+            display(slot, card);
+        else
+            presentations.add(new int[]{slot, card});
+    }
+
+    /**
+     * Starts the thread that shows the card changes (if there is a table delay). Called by the dealer when the game
+     * starts.
+     */
+    public synchronized void startPresentation() {
+        if (presentations != null && presenter == null) {
+            presenter = new Thread(this::present, "table-presenter");
+            presenter.start();
+        }
+    }
+
+    /**
+     * Stops the thread that shows the card changes and waits for it to finish. Called by the dealer when the game is
+     * terminated.
+     */
+    public synchronized void stopPresentation() {
+        if (presenter == null)
+            return;
+        presenter.interrupt();
+        try {
+            presenter.join();
+        } catch (InterruptedException ignored) {}
+        presenter = null;
+    }
+
+    /**
+     * The main loop of the presentation thread: plays the table delay and shows each card change in turn.
+     */
+    private void present() {
+        env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        try {
+            while (true) {
+                int[] change = presentations.take();
+                env.clock.sleep(env.config.tableDelayMillis);
+                display(change[0], change[1]);
+            }
+        } catch (InterruptedException ignored) {}
+        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    private void display(int slot, int card) {
+        if (card == -1)
+            env.ui.removeCard(slot);
+        else
+            env.ui.placeCard(card, slot);
+        unshownChanges.decrementAndGet(slot);
+    }
+
+    /**
+     * Returns true iff the card in a slot is shown (the presentation of the changes to the slot is done).
+     * @param slot - the slot to check.
+     */
+    public boolean isShown(int slot) {
+        return slotToCard[slot] != null && unshownChanges.get(slot) == 0;
     }
 
     /**
@@ -142,10 +405,11 @@ public class Table {
      * @param player - the player the token belongs to.
      * @param slot   - the slot on which to place the token.
      */
-    public synchronized void placeToken(int player, int slot) {
-        tokensPerSlot[slot].add(player);
-        tokensPerPlayer[player].add(slot);
-        env.ui.placeToken(player, slot);
+    public void placeToken(int player, int slot) {
+        if (tokensPerSlot.set(slot, player)) {
+            tokensPerPlayer.set(player, slot);
+            env.ui.placeToken(player, slot);
+        }
     }
 
     /**
@@ -154,46 +418,84 @@ public class Table {
      * @param slot   - the slot from which to remove the token.
      * @return       - true iff a token was successfully removed.
      */
-    public synchronized boolean removeToken(int player, int slot) {   
-        if( tokensPerSlot[slot].remove((Integer)player))
+    public boolean removeToken(int player, int slot) {   
+        if( tokensPerSlot.clear(slot, player))
         {
-            tokensPerPlayer[player].remove((Integer)slot);
+            tokensPerPlayer.clear(player, slot);
             env.ui.removeToken(player, slot);
             return true;
         }
         
         return false;
     }
+
+    /**
+     * Removes the token of a player from a grid slot if he has one there, otherwise places one (if there is a card in
+     * the slot and it is shown).
+     * @param player - the player the token belongs to.
+     * @param slot   - the slot of the token.
+     * @return       - true iff a token was placed.
+     */
+    public boolean toggleToken(int player, int slot) {
+        slotLocks[slot].lock();
+        try {
+            if (!isShown(slot) || removeToken(player, slot))
+                return false;
+            placeToken(player, slot);
+            return true;
+        } finally {
+            slotLocks[slot].unlock();
+        }
+    }
 //-------------------------------------------------------------------- added by me ------------------------------------------------------------
     /**
      * Returns the slots list of tokens for the specific player.
      * @param id - the  id of the player.
      * @return - the list of tokens used by this player.
      */
-    public synchronized LinkedList<Integer> getTokensByPlayer(int id){
-        return tokensPerPlayer[id];
+    public LinkedList<Integer> getTokensByPlayer(int id){
+        return tokensPerPlayer.columns(id);
     }
     /**
      * Returns the number of tokens used by the specific player.
      * @param id - the  id of the player.
      * @return - the number of tokens used by this player.
      */
-    public synchronized int getTokensNumberByPlayer(int id){
-        return tokensPerPlayer[id].size();
+    public int getTokensNumberByPlayer(int id){
+        return tokensPerPlayer.count(id);
     }
     /**
      * remove all tokens of a specific player from the table.
      * @param id
      */
-    public synchronized void removeAllTokensByPlayer(int id){
-        for (int i = 0; i < tokensPerPlayer[id].size(); i++) {
-            removeToken(id, tokensPerPlayer[id].get(i));
+    public void removeAllTokensByPlayer(int id){
+        for (int slot : getTokensByPlayer(id)) {
+            removeToken(id, slot);
         }
     }
     /*
      * Returns the list of players used tokens on the specific slot.
      */
-    public synchronized LinkedList<Integer> getTokensPerSlot(int slot) {
-        return tokensPerSlot[slot];
+    public LinkedList<Integer> getTokensPerSlot(int slot) {
+        return tokensPerSlot.columns(slot);
+    }
+    /**
+     * Returns the number of legal sets formed by the cards currently on the table.
+     */
+    public int countSets() {
+        return snapshot.get().countSets();
+    }
+    /**
+     * Returns true iff the cards currently on the table form at least one legal set.
+     */
+    public boolean hasSet() {
+        return snapshot.get().countSets() > 0;
+    }
+
+    private static boolean contains(int[] set, int card) {
+        for (int c : set)
+            if (c == card)
+                return true;
+        return false;
     }
 }
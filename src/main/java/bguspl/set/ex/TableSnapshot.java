@@ -0,0 +1,163 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+
+/**
+ * A view of the table at some version: the card in each slot, the version each card was placed in and the legal sets
+ * on the table, all immutable. The table publishes a new snapshot (copying only the arrays that changed) on every card
+ * change, so readers get a consistent view of the cards with a single volatile read and never block the dealer or the
+ * players.
+ * The tokens are not copied into the snapshot: they change on every key press, and publishing them would make every
+ * player's key press go through the one reference the snapshots are published in. They are read from the table's
+ * token bitsets when asked for, so they are as of the time of the read, not of the snapshot's version. A card change
+ * removes the tokens on the slot before the snapshot is published, so tokens read after the snapshot is taken are
+ * never on a card older than the snapshot; a card placed later is caught by changedSince.
+ */
+public final class TableSnapshot {
+
+    /**
+     * The number of card changes made to the table before this snapshot.
+     */
+    public final long version;
+
+    /**
+     * The card in each slot, -1 if there is none.
+     */
+    private final int[] cards;
+
+    /**
+     * The version in which the card in each slot was last placed or removed.
+     */
+    private final long[] cardVersions;
+
+    /**
+     * The slots each player has tokens on (a row of slot bits per player), shared with the table.
+     */
+    private final AtomicBitMatrix tokens;
+
+    /**
+     * The legal sets formed by the cards on the table.
+     */
+    private final int[][] sets;
+
+    private TableSnapshot(long version, int[] cards, long[] cardVersions, AtomicBitMatrix tokens, int[][] sets) {
+        this.version = version;
+        this.cards = cards;
+        this.cardVersions = cardVersions;
+        this.tokens = tokens;
+        this.sets = sets;
+    }
+
+    /**
+     * @param tokens - the slots each player has tokens on (a row of slot bits per player).
+     * @return - the snapshot of a table with no cards.
+     */
+    static TableSnapshot empty(int tableSize, AtomicBitMatrix tokens) {
+        int[] cards = new int[tableSize];
+        Arrays.fill(cards, -1);
+        return new TableSnapshot(0, cards, new long[tableSize], tokens, new int[0][]);
+    }
+
+    /**
+     * @return - the card in the slot, -1 if there is none.
+     */
+    public int card(int slot) {
+        return cards[slot];
+    }
+
+    /**
+     * @return - the version in which the card in the slot was last placed or removed.
+     */
+    public long cardVersion(int slot) {
+        return cardVersions[slot];
+    }
+
+    /**
+     * @return - the number of cards on the table.
+     */
+    public int countCards() {
+        int count = 0;
+        for (int card : cards)
+            if (card >= 0)
+                ++count;
+        return count;
+    }
+
+    /**
+     * @return - true iff the player has a token on the slot (now, see the class comment).
+     */
+    public boolean hasToken(int player, int slot) {
+        return tokens.get(player, slot);
+    }
+
+    /**
+     * @return - the slots the player has tokens on (now, see the class comment), in increasing order.
+     */
+    public int[] tokens(int player) {
+        long[] row = tokens.row(player);
+        int count = 0;
+        for (long word : row)
+            count += Long.bitCount(word);
+        int[] slots = new int[count];
+        int i = 0;
+        for (int w = 0; w < row.length; ++w)
+            for (long word = row[w]; word != 0; word &= word - 1)
+                slots[i++] = w * Long.SIZE + Long.numberOfTrailingZeros(word);
+        return slots;
+    }
+
+    /**
+     * @return - the number of tokens the player has on the table (now, see the class comment).
+     */
+    public int countTokens(int player) {
+        return tokens.count(player);
+    }
+
+    /**
+     * @return - true iff the card in any of the slots was placed or removed after the given version.
+     */
+    public boolean changedSince(int[] slots, long version) {
+        for (int slot : slots)
+            if (cardVersions[slot] > version)
+                return true;
+        return false;
+    }
+
+    /**
+     * @return - the number of legal sets on the table.
+     */
+    public int countSets() {
+        return sets.length;
+    }
+
+    /**
+     * @return - the i-th legal set on the table (the array must not be modified).
+     */
+    public int[] set(int i) {
+        return sets[i];
+    }
+
+    /**
+     * @return - a snapshot with the card in the slot replaced (-1 to remove it).
+     */
+    TableSnapshot withCard(int slot, int card, int[][] sets) {
+        int[] newCards = cards.clone();
+        newCards[slot] = card;
+        long[] newCardVersions = cardVersions.clone();
+        newCardVersions[slot] = version + 1;
+        return new TableSnapshot(version + 1, newCards, newCardVersions, tokens, sets);
+    }
+
+    /**
+     * @return - a snapshot with the cards in the slots replaced (-1 to remove a card), as a single change.
+     */
+    TableSnapshot withCards(int[] slots, int[] slotCards, int[][] sets) {
+        int[] newCards = cards.clone();
+        long[] newCardVersions = cardVersions.clone();
+        for (int i = 0; i < slots.length; i++) {
+            newCards[slots[i]] = slotCards[i];
+            newCardVersions[slots[i]] = version + 1;
+        }
+        return new TableSnapshot(version + 1, newCards, newCardVersions, tokens, sets);
+    }
+}
@@ -0,0 +1,215 @@
+package bguspl.set.ex;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A hierarchical timer wheel of deadlines, one per key (e.g. a player id), with a resolution of a millisecond.
+ * Level l has 64 slots of 64^l milliseconds each. A deadline is kept in the level of the highest digit (in base 64)
+ * where it differs from the current time, and moves down a level each time the current time reaches its slot, so
+ * scheduling, cancelling and expiring a deadline are all O(1). Empty slots are skipped using a bitmask of the
+ * occupied slots of each level.
+ * Not thread safe.
+ */
+public class TimerWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+
+    /**
+     * Enough levels for deadlines up to 2^42 milliseconds (over a hundred years) from the start time.
+     */
+    private static final int LEVELS = 7;
+
+    private static class Node {
+        final int key;
+        long tick;
+        int level, slot;
+        Node prev, next;
+        boolean scheduled;
+
+        Node(int key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * The time (in milliseconds) of tick 0, the ticks are counted from it.
+     */
+    private final long start;
+
+    /**
+     * The next tick to process.
+     */
+    private long current;
+
+    /**
+     * The node of each key.
+     */
+    private final Node[] nodes;
+
+    /**
+     * The first node in each slot of each level.
+     */
+    private final Node[][] heads;
+
+    /**
+     * The occupied slots of each level, as a bitmask.
+     */
+    private final long[] occupied;
+
+    /**
+     * @param keys - the number of keys (the keys are 0 to keys - 1).
+     * @param now  - the current time (in milliseconds).
+     */
+    public TimerWheel(int keys, long now) {
+        this.start = now;
+        this.current = 0;
+        this.nodes = new Node[keys];
+        for (int key = 0; key < keys; ++key)
+            nodes[key] = new Node(key);
+        this.heads = new Node[LEVELS][SLOTS];
+        this.occupied = new long[LEVELS];
+    }
+
+    /**
+     * Schedules the deadline of a key, replacing its previous deadline if it has one.
+     * A deadline in the past expires in the next call to advance.
+     *
+     * @param key  - the key.
+     * @param time - the deadline (in milliseconds).
+     */
+    public void schedule(int key, long time) {
+        Node node = nodes[key];
+        cancel(key);
+        node.tick = Math.max(time - start, current);
+        place(node);
+    }
+
+    /**
+     * Cancels the deadline of a key, if it has one.
+     */
+    public void cancel(int key) {
+        Node node = nodes[key];
+        if (node.scheduled)
+            unlink(node);
+    }
+
+    /**
+     * @return - true iff the key has a deadline.
+     */
+    public boolean isScheduled(int key) {
+        return nodes[key].scheduled;
+    }
+
+    /**
+     * Expires the deadlines up to a given time, in time order. The action may schedule new deadlines for the expired
+     * keys, and those already due expire in the same call.
+     *
+     * @param now    - the current time (in milliseconds).
+     * @param action - called with the key of each expired deadline.
+     */
+    public void advance(long now, IntConsumer action) {
+        long until = now - start;
+        while (current <= until) {
+            int slot = (int) (current & MASK);
+            long ahead = occupied[0] & (-1L << slot);
+            long blockStart = current - slot;
+            long due = ahead != 0 ? blockStart + Long.numberOfTrailingZeros(ahead) : Long.MAX_VALUE;
+            if (due <= until) {
+                current = due;
+                expire((int) (due & MASK), action);
+                // the action may have added deadlines for this same tick
+                if ((occupied[0] & (1L << (due & MASK))) != 0)
+                    continue;
+                current = due + 1;
+            } else
+                current = Math.min(until, blockStart + MASK) + 1;
+            if ((current & MASK) == 0)
+                cascade();
+        }
+    }
+
+    /**
+     * @return - the earliest time (in milliseconds) advance has something to do: a deadline expires, or moves down to
+     * the lowest level, Long.MAX_VALUE if there are no deadlines.
+     */
+    public long nextDeadline() {
+        for (int level = 0; level < LEVELS; ++level) {
+            int shift = BITS * level;
+            int slot = (int) ((current >>> shift) & MASK);
+            // a deadline in a higher level is always ahead of the current slot of that level
+            long ahead = occupied[level] & (level == 0 ? -1L << slot : -2L << slot);
+            if (ahead != 0) {
+                long blockStart = current & ~((1L << (shift + BITS)) - 1);
+                return start + blockStart + ((long) Long.numberOfTrailingZeros(ahead) << shift);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private void place(Node node) {
+        long diff = node.tick ^ current;
+        int level = diff == 0 ? 0 : Math.min((63 - Long.numberOfLeadingZeros(diff)) / BITS, LEVELS - 1);
+        int slot = (int) ((node.tick >>> (BITS * level)) & MASK);
+        node.level = level;
+        node.slot = slot;
+        node.prev = null;
+        node.next = heads[level][slot];
+        if (node.next != null)
+            node.next.prev = node;
+        heads[level][slot] = node;
+        occupied[level] |= 1L << slot;
+        node.scheduled = true;
+    }
+
+    private void unlink(Node node) {
+        if (node.prev != null)
+            node.prev.next = node.next;
+        else
+            heads[node.level][node.slot] = node.next;
+        if (node.next != null)
+            node.next.prev = node.prev;
+        if (heads[node.level][node.slot] == null)
+            occupied[node.level] &= ~(1L << node.slot);
+        node.prev = node.next = null;
+        node.scheduled = false;
+    }
+
+    /**
+     * Takes the nodes out of a slot of the lowest level (all of them are due), and calls the action for each.
+     */
+    private void expire(int slot, IntConsumer action) {
+        Node node = heads[0][slot];
+        heads[0][slot] = null;
+        occupied[0] &= ~(1L << slot);
+        while (node != null) {
+            Node next = node.next;
+            node.prev = node.next = null;
+            node.scheduled = false;
+            action.accept(node.key);
+            node = next;
+        }
+    }
+
+    /**
+     * Moves the deadlines in the slots the current tick has just reached down to lower levels, from the highest
+     * level whose slot changed.
+     */
+    private void cascade() {
+        int top = 1;
+        while (top < LEVELS - 1 && ((current >>> (BITS * top)) & MASK) == 0)
+            ++top;
+        for (int level = top; level >= 1; --level) {
+            int slot = (int) ((current >>> (BITS * level)) & MASK);
+            Node node = heads[level][slot];
+            heads[level][slot] = null;
+            occupied[level] &= ~(1L << slot);
+            while (node != null) {
+                Node next = node.next;
+                place(node);
+                node = next;
+            }
+        }
+    }
+}
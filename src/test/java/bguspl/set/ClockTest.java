@@ -0,0 +1,37 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClockTest {
+
+    @Test
+    void system_RunsInRealTime() {
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(250), Clock.SYSTEM.toNanos(250));
+        long before = System.currentTimeMillis();
+        long now = Clock.SYSTEM.currentTimeMillis();
+        assertTrue(now >= before && now <= System.currentTimeMillis());
+    }
+
+    @Test
+    void scaled_RunsFaster() throws InterruptedException {
+        Clock clock = new Clock(1000);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(5), clock.toNanos(5));
+        long start = clock.currentTimeMillis();
+        long realStart = System.nanoTime();
+        clock.sleep(20_000); // 20 seconds on the clock
+        long real = System.nanoTime() - realStart;
+        assertTrue(clock.currentTimeMillis() - start >= 20_000);
+        assertTrue(real >= TimeUnit.MILLISECONDS.toNanos(20) && real < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    void constructor_RejectsNonPositiveSpeed() {
+        assertThrows(IllegalArgumentException.class, () -> new Clock(0));
+    }
+}
@@ -0,0 +1,245 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UtilImplTest {
+
+    UtilImpl util;
+    Config config;
+
+    @BeforeEach
+    void setUp() {
+        util = createUtil(4, 3);
+    }
+
+    private UtilImpl createUtil(int featureCount, int featureSize) {
+        return createUtil(featureCount, featureSize, 0);
+    }
+
+    private UtilImpl createUtil(int featureCount, int featureSize, int parallelSearchThreshold) {
+        return createUtil(featureCount, featureSize, parallelSearchThreshold, 1);
+    }
+
+    private UtilImpl createUtil(int featureCount, int featureSize, int parallelSearchThreshold, int parallelism) {
+        Properties properties = new Properties();
+        properties.put("ParallelSearchThreshold", Integer.toString(parallelSearchThreshold));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("PlayerKeys1", "");
+        properties.put("PlayerKeys2", "");
+        config = new Config(new MockLogger(), properties);
+        return new UtilImpl(config, parallelism);
+    }
+
+    private List<Integer> shuffledDeck(long seed, int size) {
+        List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, new Random(seed));
+        return new ArrayList<>(deck.subList(0, size));
+    }
+
+    /**
+     * The plain combination search, used as the reference for the faster search engines.
+     */
+    private List<int[]> bruteForceSets(List<Integer> deck, int count) {
+        List<int[]> sets = new LinkedList<>();
+        int n = deck.size();
+        for (int i = 0; i < n; ++i)
+            for (int j = i + 1; j < n; ++j)
+                for (int k = j + 1; k < n; ++k) {
+                    int[] cards = IntStream.of(deck.get(i), deck.get(j), deck.get(k)).sorted().toArray();
+                    if (util.testSet(cards)) {
+                        sets.add(cards);
+                        if (sets.size() >= count) return sets;
+                    }
+                }
+        return sets;
+    }
+
+    /**
+     * The plain combination search for sets of any size.
+     */
+    private List<int[]> combinationSets(int[] cards, int setSize) {
+        List<int[]> sets = new LinkedList<>();
+        int[] combination = IntStream.range(0, setSize).toArray();
+        while (combination[setSize - 1] < cards.length) {
+            int[] set = IntStream.of(combination).map(i -> cards[i]).sorted().toArray();
+            if (util.testSet(set)) sets.add(set);
+            int t = setSize - 1;
+            while (t != 0 && combination[t] == cards.length - setSize + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < setSize; i++) combination[i] = combination[i - 1] + 1;
+        }
+        return sets;
+    }
+
+    private void assertSameSets(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i)
+            assertArrayEquals(expected.get(i), actual.get(i));
+    }
+
+    private List<String> toSortedStrings(List<int[]> sets) {
+        return sets.stream().map(Arrays::toString).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    void testSet_LegalAndIllegal() {
+        assertTrue(util.testSet(new int[]{0, 1, 2}));
+        assertTrue(util.testSet(new int[]{0, 40, 80}));
+        assertFalse(util.testSet(new int[]{0, 1, 3}));
+    }
+
+    /**
+     * Checks a set feature by feature, the way the rules are phrased.
+     */
+    private boolean isSetByRules(int[] cards) {
+        int[][] features = util.cardsToFeatures(cards);
+        for (int i = 0; i < config.featureCount; ++i) {
+            final int feature = i;
+            long distinct = IntStream.range(0, cards.length).map(j -> features[j][feature]).distinct().count();
+            boolean allSame = distinct <= 1, allDifferent = distinct == cards.length;
+            if (allSame == allDifferent) return false;
+        }
+        return true;
+    }
+
+    @Test
+    void testSet_SameAsRules() {
+        int[][] configs = {{4, 3}, {3, 4}, {3, 5}, {2, 40}}; // the last one does not fit the packed representation
+        Random random = new Random(7);
+        for (int[] c : configs) {
+            util = createUtil(c[0], c[1]);
+            for (int n = 0; n < 2000; ++n) {
+                int[] cards = random.ints(c[1], 0, config.deckSize).toArray();
+                if (n % 3 == 0) // make sure there are legal sets among the candidates: only the last feature differs
+                    for (int j = 0; j < cards.length; ++j)
+                        cards[j] = cards[0] - cards[0] % config.featureSize + j;
+                assertEquals(isSetByRules(cards), util.testSet(cards));
+            }
+        }
+    }
+
+    @Test
+    void findSets_FullDeck() {
+        List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        List<int[]> sets = util.findSets(deck, Integer.MAX_VALUE);
+        assertEquals(1080, sets.size()); // 81 * 80 / 6
+        sets.forEach(set -> assertTrue(util.testSet(set)));
+    }
+
+    @Test
+    void findSets_SameAsCombinationSearch() {
+        for (long seed = 0; seed < 20; ++seed) {
+            List<Integer> deck = shuffledDeck(seed, 12 + (int) seed * 3);
+            assertSameSets(bruteForceSets(deck, Integer.MAX_VALUE), util.findSets(deck, Integer.MAX_VALUE));
+            assertSameSets(bruteForceSets(deck, 3), util.findSets(deck, 3));
+        }
+    }
+
+    @Test
+    void findSets_LargeDeck() {
+        util = createUtil(6, 3);
+        List<Integer> deck = shuffledDeck(1, config.deckSize);
+        assertEquals(config.deckSize * (config.deckSize - 1) / 6, util.findSets(deck, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void findSets_BacktrackingSameAsCombinationSearch() {
+        for (int[] c : new int[][]{{3, 4}, {4, 4}, {3, 5}}) {
+            util = createUtil(c[0], c[1]);
+            for (long seed = 0; seed < 3; ++seed) {
+                int[] cards = shuffledDeck(seed, 28).stream().mapToInt(Integer::intValue).toArray();
+                List<int[]> expected = combinationSets(cards, c[1]);
+                assertSameSets(expected, util.findSets(cards, cards.length, Integer.MAX_VALUE));
+                assertSameSets(expected.subList(0, Math.min(2, expected.size())), util.findSets(cards, cards.length, 2));
+
+                int card = cards[(int) seed];
+                List<int[]> with = new ArrayList<>();
+                util.findSetsWith(card, cards, cards.length, set -> with.add(set.clone()));
+                assertEquals(toSortedStrings(expected.stream().filter(set -> IntStream.of(set).anyMatch(x -> x == card))
+                        .collect(Collectors.toList())), toSortedStrings(with));
+            }
+        }
+    }
+
+    @Test
+    void findSetsWith_SameAsFilteredSearch() {
+        for (long seed = 0; seed < 10; ++seed) {
+            List<Integer> cards = shuffledDeck(seed, 30);
+            int card = cards.get((int) seed);
+            List<int[]> expected = bruteForceSets(cards, Integer.MAX_VALUE).stream()
+                    .filter(set -> IntStream.of(set).anyMatch(c -> c == card)).collect(Collectors.toList());
+            int[] array = cards.stream().mapToInt(Integer::intValue).toArray();
+            List<int[]> actual = new ArrayList<>();
+            util.findSetsWith(card, array, array.length, set -> actual.add(set.clone()));
+            assertEquals(toSortedStrings(expected), toSortedStrings(actual));
+            assertEquals(expected.size(), util.countSetsWith(card, array, array.length));
+        }
+    }
+
+    @Test
+    void findSets_ParallelSameAsSequential() {
+        for (int[] c : new int[][]{{6, 3}, {3, 4}}) {
+            UtilImpl sequential = createUtil(c[0], c[1]);
+            // findSets goes parallel only with several threads, whatever the parallelism of this machine's pool
+            util = createUtil(c[0], c[1], 10, 4);
+            int[] cards = shuffledDeck(c[0], Math.min(config.deckSize, 200)).stream().mapToInt(Integer::intValue).toArray();
+            for (int count : new int[]{1, 7, 1000, Integer.MAX_VALUE})
+                assertSameSets(sequential.findSets(cards, cards.length, count), util.findSets(cards, cards.length, count));
+            assertEquals(sequential.countSets(cards, cards.length), util.countSets(cards, cards.length));
+        }
+    }
+
+    @Test
+    void findSets_ParallelStopsWhenSinkDoes() {
+        for (int[] c : new int[][]{{6, 3}, {3, 4}}) {
+            UtilImpl sequential = createUtil(c[0], c[1]);
+            util = createUtil(c[0], c[1], 10, 4);
+            int[] cards = shuffledDeck(c[0], Math.min(config.deckSize, 200)).stream().mapToInt(Integer::intValue).toArray();
+            List<int[]> accepted = new ArrayList<>();
+            int found = util.findSets(cards, cards.length, Integer.MAX_VALUE, set -> {
+                accepted.add(set.clone());
+                return accepted.size() < 3;
+            });
+            assertEquals(3, found);
+            assertSameSets(sequential.findSets(cards, cards.length, 3), accepted);
+        }
+    }
+
+    @Test
+    void streamSets_SameAsFindSets() {
+        for (int[] c : new int[][]{{4, 3}, {3, 4}, {4, 4}}) {
+            util = createUtil(c[0], c[1]);
+            int[] cards = shuffledDeck(c[0], 40).stream().mapToInt(Integer::intValue).toArray();
+            List<int[]> expected = util.findSets(cards, cards.length, Integer.MAX_VALUE);
+            assertSameSets(expected, util.streamSets(cards, cards.length).collect(Collectors.toList()));
+            assertSameSets(expected, util.streamSets(cards, cards.length).parallel().collect(Collectors.toList()));
+            assertSameSets(expected.subList(0, 5), util.streamSets(cards, cards.length).limit(5).collect(Collectors.toList()));
+            assertEquals(expected.size(), util.streamSets(cards, cards.length).parallel().count());
+            assertTrue(util.streamSets(cards, cards.length).anyMatch(util::testSet));
+        }
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
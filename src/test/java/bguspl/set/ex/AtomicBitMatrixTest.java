@@ -0,0 +1,49 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AtomicBitMatrixTest {
+
+    @Test
+    void setAndClear_ManyColumns() {
+        AtomicBitMatrix matrix = new AtomicBitMatrix(3, 150);
+        assertTrue(matrix.set(1, 0));
+        assertTrue(matrix.set(1, 64));
+        assertTrue(matrix.set(1, 149));
+        assertFalse(matrix.set(1, 64));
+        assertEquals(3, matrix.count(1));
+        assertEquals(0, matrix.count(0));
+        assertEquals(0, matrix.count(2));
+
+        assertTrue(matrix.clear(1, 64));
+        assertFalse(matrix.clear(1, 64));
+        assertFalse(matrix.get(1, 64));
+        assertEquals(Arrays.asList(0, 149), matrix.columns(1));
+    }
+
+    @Test
+    void clearRow_ReturnsSetColumns() throws InterruptedException {
+        AtomicBitMatrix matrix = new AtomicBitMatrix(2, 100);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                for (int column = first; column < 100; column += threads.length)
+                    matrix.set(0, column);
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(100, matrix.count(0));
+        assertEquals(100, matrix.clearRow(0).size());
+        assertEquals(0, matrix.count(0));
+    }
+}
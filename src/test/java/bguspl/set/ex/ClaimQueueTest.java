@@ -0,0 +1,85 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ClaimQueueTest {
+
+    ClaimQueue claims;
+
+    @BeforeEach
+    void setUp() {
+        claims = new ClaimQueue();
+    }
+
+    @Test
+    void poll_TicketOrder() {
+        long first = claims.takeTicket();
+        long second = claims.takeTicket();
+        claims.submit(second, 1, 0);
+        claims.submit(first, 0, 0);
+
+        assertEquals(0, claims.poll().player);
+        assertEquals(1, claims.poll().player);
+        assertNull(claims.poll());
+    }
+
+    @Test
+    void poll_WaitsForTakenTicket() throws InterruptedException {
+        long first = claims.takeTicket();
+        long second = claims.takeTicket();
+        claims.submit(second, 1, 0);
+        Thread submitter = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {}
+            claims.submit(first, 0, 0);
+        });
+        submitter.start();
+
+        assertEquals(first, claims.poll().ticket);
+        assertEquals(second, claims.poll().ticket);
+        submitter.join();
+    }
+
+    @Test
+    void poll_ParksWhileWaitingForTakenTicket() throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isCurrentThreadCpuTimeSupported());
+        long ticket = claims.takeTicket();
+        Thread submitter = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ignored) {}
+            claims.submit(ticket, 0, 0);
+        });
+        submitter.start();
+
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        assertEquals(ticket, claims.poll().ticket);
+        // the dealer's thread must not burn its CPU while the claim is being submitted
+        assertTrue(threads.getCurrentThreadCpuTime() - cpuStart < TimeUnit.MILLISECONDS.toNanos(150));
+        submitter.join();
+    }
+
+    @Test
+    void await_ReturnsOnClaimOrDeadline() {
+        long start = System.currentTimeMillis();
+        assertFalse(claims.await(start + 50));
+        assertTrue(System.currentTimeMillis() - start >= 40);
+
+        claims.submit(claims.takeTicket(), 3, 0);
+        assertTrue(claims.await(System.currentTimeMillis() + 10_000));
+        assertEquals(3, claims.poll().player);
+    }
+}
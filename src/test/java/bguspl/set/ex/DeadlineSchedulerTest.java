@@ -0,0 +1,60 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DeadlineSchedulerTest {
+
+    DeadlineScheduler scheduler;
+    List<Integer> ran;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new DeadlineScheduler();
+        ran = new ArrayList<>();
+    }
+
+    @Test
+    void runDue_TimeOrder() {
+        scheduler.schedule(30, () -> ran.add(3));
+        scheduler.schedule(10, () -> ran.add(1));
+        scheduler.schedule(20, () -> ran.add(2));
+        scheduler.schedule(10, () -> ran.add(4));
+
+        assertEquals(10, scheduler.next());
+        assertEquals(3, scheduler.runDue(20));
+        assertEquals(Arrays.asList(1, 4, 2), ran);
+        assertEquals(30, scheduler.next());
+    }
+
+    @Test
+    void cancel_SkipsDeadline() {
+        DeadlineScheduler.Deadline cancelled = scheduler.schedule(10, () -> ran.add(1));
+        scheduler.schedule(20, () -> ran.add(2));
+        scheduler.cancel(cancelled);
+
+        assertEquals(20, scheduler.next());
+        assertEquals(1, scheduler.runDue(100));
+        assertEquals(Arrays.asList(2), ran);
+        assertEquals(Long.MAX_VALUE, scheduler.next());
+    }
+
+    @Test
+    void runDue_RescheduledActionRunsWhenDue() {
+        scheduler.schedule(10, () -> {
+            ran.add(1);
+            scheduler.schedule(15, () -> ran.add(2));
+            scheduler.schedule(50, () -> ran.add(3));
+        });
+
+        assertEquals(2, scheduler.runDue(20));
+        assertEquals(Arrays.asList(1, 2), ran);
+        assertEquals(50, scheduler.next());
+    }
+}
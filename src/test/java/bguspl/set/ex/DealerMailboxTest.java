@@ -0,0 +1,35 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DealerMailboxTest {
+
+    @Test
+    void toggleToken_PostedInOrderAndWakesDealer() {
+        AtomicInteger wakeUps = new AtomicInteger();
+        DealerMailbox mailbox = new DealerMailbox(wakeUps::incrementAndGet);
+        assertTrue(mailbox.isEmpty());
+        mailbox.toggleToken(1, 4);
+        mailbox.toggleToken(0, 7);
+        assertEquals(1, wakeUps.get()); // only the message posted to an empty mailbox wakes the dealer
+
+        DealerMailbox.Message first = mailbox.poll();
+        assertEquals(DealerMailbox.Message.Type.TOGGLE_TOKEN, first.type);
+        assertEquals(1, first.player);
+        assertEquals(4, first.slot);
+        DealerMailbox.Message second = mailbox.poll();
+        assertEquals(0, second.player);
+        assertEquals(7, second.slot);
+        assertNull(mailbox.poll());
+        assertTrue(mailbox.isEmpty());
+
+        mailbox.toggleToken(2, 0);
+        assertEquals(2, wakeUps.get());
+    }
+}
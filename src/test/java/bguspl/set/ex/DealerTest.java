@@ -0,0 +1,151 @@
+package bguspl.set.ex;
+
+import bguspl.set.Clock;
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DealerTest {
+
+    /**
+     * A countdown display update: the time (on the game's clock) it was made at, the time left shown and the warning.
+     */
+    private static class Countdown {
+        final long at, millis;
+        final boolean warn;
+
+        Countdown(long at, long millis, boolean warn) {
+            this.at = at;
+            this.millis = millis;
+            this.warn = warn;
+        }
+    }
+
+    @Test
+    void run_CountdownTicksBeforeFirstClaim() throws InterruptedException {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "1");
+        properties.put("ComputerPlayers", "0");
+        properties.put("TurnTimeoutSeconds", "6");
+        properties.put("TurnTimeoutWarningSeconds", "2");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("EndGamePauseSeconds", "0");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Clock clock = new Clock(10);
+        List<Countdown> countdowns = new CopyOnWriteArrayList<>();
+        Env env = new Env(logger, config, new TableTest.MockUserInterface() {
+            @Override
+            public void setCountdown(long millis, boolean warn) {
+                countdowns.add(new Countdown(clock.currentTimeMillis(), millis, warn));
+            }
+        }, new UtilImpl(config), clock);
+        Table table = new Table(env);
+        Player[] players = new Player[1];
+        Dealer dealer = new Dealer(env, table, players);
+        players[0] = new Player(env, dealer, table, 0, true); // never presses a key, so there is no claim
+
+        long start = clock.currentTimeMillis();
+        Thread dealerThread = new Thread(dealer, "dealer");
+        dealerThread.start();
+        // the warning zone starts 4 seconds into the turn (0.4 seconds of real time)
+        for (int i = 0; i < 200 && countdowns.stream().noneMatch(c -> c.warn); ++i)
+            Thread.sleep(10);
+        dealer.terminate();
+        dealerThread.join(5000);
+        assertFalse(dealerThread.isAlive());
+
+        assertFalse(countdowns.isEmpty());
+        assertTrue(countdowns.get(0).at - start < 1000); // the countdown is shown as the turn starts
+        // the display counts down during the first turn, and turns red before it ends
+        assertTrue(countdowns.stream().anyMatch(c -> c.at - start < 6000 && c.millis > 0 && c.millis < 6000 && !c.warn));
+        assertTrue(countdowns.stream().anyMatch(c -> c.at - start < 6000 && c.warn));
+    }
+
+    @Test
+    void claimSet_TokensRemovedBeforeClaimNotPenalized() {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "1");
+        properties.put("ComputerPlayers", "0");
+        properties.put("TableDelaySeconds", "0");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        Table table = new Table(env);
+        Player[] players = new Player[1];
+        Dealer dealer = new Dealer(env, table, players);
+        Player player = new Player(env, dealer, table, 0, true);
+        players[0] = player;
+        for (int slot = 0; slot < 3; ++slot) {
+            table.placeCard(slot, slot);
+            table.toggleToken(player.id, slot);
+        }
+
+        // the dealer removes the tokens after the player counted them, before he claims: there is nothing to claim
+        table.removeAllCards();
+        dealer.claimSet(player);
+        assertEquals(-1, player.getTimeOfSetComplition());
+
+        // the dealer removes the tokens after the claim was made, and the player's reset was overwritten by the claim
+        for (int slot = 0; slot < 3; ++slot) {
+            table.placeCard(slot, slot);
+            table.toggleToken(player.id, slot);
+        }
+        dealer.claimSet(player);
+        assertTrue(player.getTimeOfSetComplition() > 0);
+        table.removeAllCards();
+        dealer.removeCardsFromTable();
+        assertEquals(-1, player.getTimeOfSetComplition()); // voided, not judged
+        assertEquals(0, dealer.getClaimsJudged());
+        assertFalse(dealer.getFreezes().isFrozen(player.id));
+    }
+
+    @Test
+    void removeCardsFromTable_FrozenBeforeVerdict() {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "2");
+        properties.put("ComputerPlayers", "0");
+        properties.put("TableDelaySeconds", "0");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        Table table = new Table(env);
+        Player[] players = new Player[2];
+        Dealer dealer = new Dealer(env, table, players);
+        // records whether the player was frozen when the verdict on his claim was published
+        List<Boolean> frozenAtVerdict = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < players.length; ++i)
+            players[i] = new Player(env, dealer, table, i, true) {
+                @Override
+                public void setTimeOfSetComplition(long time) {
+                    if (time < 0 && getTimeOfSetComplition() > 0)
+                        frozenAtVerdict.add(dealer.getFreezes().isFrozen(id));
+                    super.setTimeOfSetComplition(time);
+                }
+            };
+        for (int slot = 0; slot < 4; ++slot)
+            table.placeCard(slot, slot); // 0000, 0001, 0002, 0010
+        // player 0 claims a set that is not legal, player 1 claims a legal one
+        for (int slot : new int[]{0, 1, 3})
+            table.toggleToken(0, slot);
+        dealer.claimSet(players[0]);
+        for (int slot : new int[]{0, 1, 2})
+            table.toggleToken(1, slot);
+        dealer.claimSet(players[1]);
+
+        dealer.removeCardsFromTable();
+        assertEquals(2, dealer.getClaimsJudged());
+        assertEquals(1, players[1].score());
+        assertEquals(2, frozenAtVerdict.size());
+        assertTrue(frozenAtVerdict.stream().allMatch(frozen -> frozen));
+    }
+}
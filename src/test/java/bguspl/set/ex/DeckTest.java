@@ -0,0 +1,140 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeckTest {
+
+    Deck deck;
+    Env env;
+
+    @BeforeEach
+    void setUp() {
+        env = createEnv(null);
+        deck = new Deck(env);
+    }
+
+    private Env createEnv(Long seed) {
+        return createEnv(seed, 3, 4);
+    }
+
+    private Env createEnv(Long seed, int featureSize, int featureCount) {
+        Properties properties = new Properties();
+        if (seed != null)
+            properties.put("DeckSeed", seed.toString());
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("PlayerKeys1", "");
+        properties.put("PlayerKeys2", "");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        return new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+    }
+
+    private List<Integer> drawAll(Deck deck) {
+        List<Integer> drawn = new ArrayList<>();
+        while (deck.size() > 0)
+            drawn.add(deck.draw());
+        return drawn;
+    }
+
+    private long countSets(List<Integer> cards) {
+        return env.util.findSets(cards, Integer.MAX_VALUE).size();
+    }
+
+    @Test
+    void setCount_FullDeck() {
+        assertEquals(env.config.deckSize, deck.size());
+        assertEquals(1080, deck.setCount());
+        assertTrue(deck.hasSet());
+    }
+
+    @Test
+    void setCount_AfterDrawsAndReturns() {
+        List<Integer> drawn = new ArrayList<>();
+        while (deck.size() > 20)
+            drawn.add(deck.draw());
+        List<Integer> left = new ArrayList<>();
+        for (int card = 0; card < env.config.deckSize; card++)
+            if (!drawn.contains(card))
+                left.add(card);
+        assertEquals(countSets(left), deck.setCount());
+
+        for (int i = 0; i < 10; i++) {
+            int card = drawn.remove(drawn.size() - 1);
+            deck.add(card);
+            left.add(card);
+        }
+        assertEquals(countSets(left), deck.setCount());
+    }
+
+    @Test
+    void setCount_FeatureSizeFourSearchesTheDeck() {
+        env = createEnv(7L, 4, 3);
+        deck = new Deck(env);
+        List<Integer> left = new ArrayList<>();
+        for (int card = 0; card < env.config.deckSize; card++)
+            left.add(card);
+        assertEquals(countSets(left), deck.setCount());
+        assertTrue(deck.hasSet());
+
+        List<Integer> drawn = new ArrayList<>();
+        while (deck.size() > 12)
+            drawn.add(deck.draw());
+        left.removeAll(drawn);
+        assertEquals(countSets(left), deck.setCount());
+        assertEquals(deck.setCount() > 0, deck.hasSet());
+
+        for (int i = 0; i < 4; i++) {
+            int card = drawn.remove(drawn.size() - 1);
+            deck.add(card);
+            left.add(card);
+        }
+        assertEquals(countSets(left), deck.setCount());
+    }
+
+    @Test
+    void draw_SameSeedSameOrder() {
+        List<Integer> first = drawAll(new Deck(createEnv(42L)));
+        assertEquals(first, drawAll(new Deck(createEnv(42L))));
+        assertNotEquals(first, drawAll(new Deck(createEnv(43L))));
+        assertEquals(env.config.deckSize, new HashSet<>(first).size());
+    }
+
+    @Test
+    void drawForTable_CompletesASet() {
+        int[] onTable = {0, 1, 3, 4}; // 0000, 0001, 0010, 0011 have no set
+        for (int card : onTable)
+            deck.remove(card);
+        int[] drawn = deck.drawForTable(onTable, onTable.length, 1);
+        assertEquals(1, drawn.length);
+        int[] table = {0, 1, 3, 4, drawn[0]};
+        assertTrue(env.util.hasSet(table, table.length));
+        assertEquals(env.config.deckSize - onTable.length - 1, deck.size());
+
+        int[] full = deck.drawForTable(new int[0], 0, 12);
+        assertEquals(12, full.length);
+        assertTrue(env.util.hasSet(full, full.length));
+    }
+
+    @Test
+    void hasSet_EmptyDeck() {
+        while (deck.size() > 0)
+            deck.draw();
+        assertEquals(0, deck.setCount());
+        assertFalse(deck.hasSet());
+    }
+}
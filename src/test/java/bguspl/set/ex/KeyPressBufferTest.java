@@ -0,0 +1,77 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyPressBufferTest {
+
+    private static KeyPressBuffer fill(KeyPressBuffer.OverflowPolicy policy, int... slots) {
+        KeyPressBuffer buffer = new KeyPressBuffer(3, policy);
+        for (int slot : slots)
+            buffer.offer(slot);
+        return buffer;
+    }
+
+    @Test
+    void offer_DropNewest() {
+        KeyPressBuffer buffer = fill(KeyPressBuffer.OverflowPolicy.DROP_NEWEST, 1, 2, 3);
+        assertFalse(buffer.offer(4));
+        assertEquals(1, buffer.dropped());
+        assertEquals(1, buffer.poll());
+        assertTrue(buffer.offer(5));
+        assertEquals(2, buffer.poll());
+        assertEquals(3, buffer.poll());
+        assertEquals(5, buffer.poll());
+        assertEquals(-1, buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void offer_DropOldest() {
+        KeyPressBuffer buffer = fill(KeyPressBuffer.OverflowPolicy.DROP_OLDEST, 1, 2, 3, 4, 5);
+        assertEquals(2, buffer.dropped());
+        assertEquals(3, buffer.poll());
+        assertEquals(4, buffer.poll());
+        assertEquals(5, buffer.poll());
+        assertEquals(-1, buffer.poll());
+    }
+
+    @Test
+    void offer_CoalesceToggles() {
+        KeyPressBuffer buffer = fill(KeyPressBuffer.OverflowPolicy.COALESCE_TOGGLES, 1, 2, 3);
+        assertFalse(buffer.offer(2)); // cancels the pending press of 2
+        assertFalse(buffer.offer(7)); // still full, nothing to coalesce with
+        assertEquals(3, buffer.dropped());
+        assertEquals(1, buffer.poll());
+        assertEquals(3, buffer.poll());
+        assertEquals(-1, buffer.poll());
+    }
+
+    @Test
+    void take_BlocksUntilOffered() throws InterruptedException {
+        KeyPressBuffer buffer = new KeyPressBuffer(3, KeyPressBuffer.OverflowPolicy.DROP_NEWEST);
+        int presses = 10000;
+        long[] sum = new long[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < presses; ++i)
+                    sum[0] += buffer.take();
+            } catch (InterruptedException ignored) {}
+        });
+        consumer.start();
+        for (int i = 0; i < presses; ++i) {
+            buffer.awaitNotFull();
+            assertTrue(buffer.offer(i % 12));
+        }
+        consumer.join(10000);
+        assertFalse(consumer.isAlive());
+        assertEquals(0, buffer.dropped());
+        long expected = 0;
+        for (int i = 0; i < presses; ++i)
+            expected += i % 12;
+        assertEquals(expected, sum[0]);
+    }
+}
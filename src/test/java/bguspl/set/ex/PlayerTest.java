@@ -14,7 +14,9 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -33,6 +35,8 @@ class PlayerTest {
     private Dealer dealer;
     @Mock
     private Logger logger;
+    private Env env;
+    private FreezeService freezes;
 
     void assertInvariants() {
         assertTrue(player.id >= 0);
@@ -42,7 +46,9 @@ class PlayerTest {
     @BeforeEach
     void setUp() {
         // purposely do not find the configuration files (use defaults here).
-        Env env = new Env(logger, new Config(logger, (String) null), ui, util);
+        env = new Env(logger, new Config(logger, (String) null), ui, util);
+        freezes = new FreezeService(env, 1);
+        when(dealer.getFreezes()).thenReturn(freezes);
         player = new Player(env, dealer, table, 0, false);
         assertInvariants();
     }
@@ -52,6 +58,22 @@ class PlayerTest {
         assertInvariants();
     }
 
+    @Test
+    void isNotASet() {
+        AtomicBitMatrix tokens = new AtomicBitMatrix(2, 12);
+        TableSnapshot snapshot = TableSnapshot.empty(12, tokens)
+                .withCard(0, 10, new int[0][]).withCard(1, 11, new int[0][]).withCard(2, 12, new int[0][]);
+        tokens.set(player.id, 0);
+        tokens.set(player.id, 1);
+        assertFalse(player.isNotASet(snapshot)); // only two tokens
+
+        tokens.set(player.id, 2);
+        when(util.testSet(new int[]{10, 11, 12})).thenReturn(false);
+        assertTrue(player.isNotASet(snapshot));
+        when(util.testSet(new int[]{10, 11, 12})).thenReturn(true);
+        assertFalse(player.isNotASet(snapshot));
+    }
+
     @Test
     void point() {
 
@@ -69,5 +91,17 @@ class PlayerTest {
 
         // check that ui.setScore was called with the player's id and the correct score
         verify(ui).setScore(eq(player.id), eq(expectedScore));
+
+        // check that the player is frozen for the point freeze time
+        assertTrue(freezes.isFrozen(player.id));
+    }
+
+    @Test
+    void penalty() {
+        player.penalty();
+
+        // check that the player is frozen for the penalty time
+        assertTrue(freezes.isFrozen(player.id));
+        verify(ui).setFreeze(eq(player.id), anyLong());
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class PlayerThreadFactoryTest {
+
+    private PlayerThreadFactory createFactory(String threadingModel) {
+        Properties properties = new Properties();
+        properties.put("ThreadingModel", threadingModel);
+        properties.put("PlayerKeys1", "");
+        properties.put("PlayerKeys2", "");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        return new PlayerThreadFactory(new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config)));
+    }
+
+    private static boolean virtualThreadsSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            // the virtual-threads profile (Java 21 and later) requires them
+            assertFalse(Boolean.getBoolean("virtualThreads.required"), "virtual threads are required but not supported");
+            return false;
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    @Test
+    void newThread_Platform() throws InterruptedException {
+        PlayerThreadFactory factory = createFactory("platform");
+        assertFalse(factory.isVirtual());
+        AtomicBoolean ran = new AtomicBoolean();
+        Thread thread = factory.newThread(() -> ran.set(true), "player-0");
+        assertEquals("player-0", thread.getName());
+        thread.start();
+        thread.join();
+        assertTrue(ran.get());
+    }
+
+    @Test
+    void newThread_VirtualOrFallback() throws InterruptedException {
+        PlayerThreadFactory factory = createFactory("virtual");
+        assertEquals(virtualThreadsSupported(), factory.isVirtual());
+        AtomicBoolean ran = new AtomicBoolean();
+        Thread thread = factory.newThread(() -> ran.set(true), "computer-0");
+        assertEquals("computer-0", thread.getName());
+        assertEquals(virtualThreadsSupported(), isVirtual(thread));
+        thread.start();
+        thread.join();
+        assertTrue(ran.get());
+    }
+
+    @Test
+    void run_TenThousandBotsOnVirtualThreads() throws InterruptedException {
+        assumeTrue(virtualThreadsSupported());
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "10000");
+        properties.put("ThreadingModel", "virtual");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("EndGamePauseSeconds", "0");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; ++i)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        Thread dealerThread = new Thread(dealer, "dealer");
+        dealerThread.start();
+        // all the players start and the game goes on: the dealer judges the claims of the bots
+        for (Player player : players)
+            for (int i = 0; i < 3000 && player.getPlayerThread() == null; ++i)
+                Thread.sleep(10);
+        for (int i = 0; i < 3000 && dealer.getClaimsJudged() < 100; ++i)
+            Thread.sleep(10);
+        long claimsJudged = dealer.getClaimsJudged();
+        dealer.terminate();
+        dealerThread.join(60000);
+        assertFalse(dealerThread.isAlive());
+
+        assertTrue(claimsJudged >= 100);
+        for (Player player : players) {
+            assertTrue(isVirtual(player.getPlayerThread()));
+            assertFalse(player.getPlayerThread().isAlive());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TableSnapshotTest {
+
+    @Test
+    void tokens_ReadFromTheBitsets() {
+        AtomicBitMatrix tokens = new AtomicBitMatrix(3, 70);
+        TableSnapshot snapshot = TableSnapshot.empty(70, tokens);
+        tokens.set(1, 5);
+        tokens.set(1, 66);
+        tokens.set(2, 66);
+        assertArrayEquals(new int[]{5, 66}, snapshot.tokens(1));
+        assertArrayEquals(new int[]{66}, snapshot.tokens(2));
+        assertEquals(0, snapshot.countTokens(0));
+
+        tokens.clear(1, 5);
+        assertFalse(snapshot.hasToken(1, 5));
+        assertTrue(snapshot.hasToken(1, 66));
+        assertEquals(0, snapshot.version); // token changes do not make a new version
+    }
+
+    @Test
+    void withCards_OnlyTheChangedSlotsGetTheNewVersion() {
+        TableSnapshot empty = TableSnapshot.empty(70, new AtomicBitMatrix(3, 70));
+        TableSnapshot placed = empty.withCards(new int[]{5, 66}, new int[]{10, 11}, new int[0][]);
+        assertEquals(1, placed.version);
+        assertEquals(2, placed.countCards());
+        assertEquals(0, empty.countCards()); // the earlier snapshots are not changed
+
+        TableSnapshot removed = placed.withCard(66, -1, new int[0][]);
+        assertEquals(-1, removed.card(66));
+        assertEquals(10, removed.card(5));
+        assertTrue(removed.changedSince(new int[]{66}, placed.version));
+        assertFalse(removed.changedSince(new int[]{5}, placed.version));
+        assertEquals(11, placed.card(66));
+    }
+}
@@ -4,20 +4,25 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TableTest {
 
     Table table;
     private Integer[] slotToCard;
     private Integer[] cardToSlot;
+    private Env env;
 
     @BeforeEach
     void setUp() {
@@ -35,7 +40,7 @@ class TableTest {
         slotToCard = new Integer[config.tableSize];
         cardToSlot = new Integer[config.deckSize];
 
-        Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
+        env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
     }
 
@@ -95,6 +100,166 @@ class TableTest {
         placeSomeCardsAndAssert();
     }
 
+    @Test
+    void placeCard_SetsAreIndexed() {
+        table = new Table(new Env(env.logger, env.config, env.ui, new UtilImpl(env.config)), slotToCard, cardToSlot);
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        assertFalse(table.hasSet());
+        table.placeCard(2, 2); // 0000, 0001, 0002
+        table.placeCard(5, 3); // 0012
+        assertEquals(1, table.countSets());
+        table.removeCard(1);
+        assertEquals(0, table.countSets());
+        table.placeCard(4, 1); // 0011 does not complete any set with 0000, 0002 and 0012
+        assertEquals(0, table.countSets());
+        table.removeCard(3);
+        table.placeCard(8, 3); // 0022 forms 0000, 0011, 0022
+        assertTrue(table.hasSet());
+        assertEquals(1, table.countSets());
+    }
+
+    @Test
+    void constructor_PrefilledSetsAreIndexed() {
+        fillSomeSlots(); // 0010, 0012
+        slotToCard[0] = 4; // 0011 forms 0010, 0011, 0012
+        cardToSlot[4] = 0;
+        table = new Table(new Env(env.logger, env.config, env.ui, new UtilImpl(env.config)), slotToCard, cardToSlot);
+        assertTrue(table.hasSet());
+        assertEquals(1, table.countSets());
+        assertEquals(3, table.snapshot().countCards());
+        table.removeCard(0);
+        assertFalse(table.hasSet());
+    }
+
+    @Test
+    void removeCard_RemovesTokensOnSlot() {
+        fillSomeSlots();
+        assertTrue(table.toggleToken(0, 1));
+        assertTrue(table.toggleToken(1, 1));
+        assertTrue(table.toggleToken(1, 2));
+        assertFalse(table.toggleToken(0, 0)); // no card in the slot
+        assertFalse(table.toggleToken(1, 2)); // removes the token
+        assertEquals(1, table.getTokensNumberByPlayer(1));
+
+        List<Integer> players = table.removeCard(1);
+        assertEquals(2, players.size());
+        assertTrue(players.contains(0) && players.contains(1));
+        assertEquals(0, table.getTokensNumberByPlayer(0));
+        assertEquals(0, table.getTokensNumberByPlayer(1));
+        assertEquals(null, slotToCard[1]);
+        assertEquals(null, cardToSlot[3]);
+    }
+
+    @Test
+    void snapshot_FollowsChanges() {
+        TableSnapshot empty = table.snapshot();
+        table.placeCard(7, 2);
+        TableSnapshot placed = table.snapshot();
+        table.toggleToken(1, 2);
+        assertEquals(-1, empty.card(2));
+        assertEquals(7, placed.card(2));
+        assertTrue(placed.hasToken(1, 2)); // the tokens are read when asked for
+        assertEquals(1, placed.countTokens(1));
+        assertTrue(placed.version > empty.version);
+        assertEquals(placed.version, table.snapshot().version); // a token change publishes no snapshot
+
+        table.removeCard(2);
+        TableSnapshot removed = table.snapshot();
+        assertEquals(-1, removed.card(2));
+        assertFalse(removed.hasToken(1, 2));
+        assertTrue(removed.changedSince(new int[]{2}, placed.version));
+        assertFalse(removed.changedSince(new int[]{0, 1, 3}, placed.version));
+        assertEquals(7, placed.card(2)); // older snapshots do not change
+    }
+
+    @Test
+    void placeCards_RemoveAllCards() {
+        table = new Table(new Env(env.logger, env.config, env.ui, new UtilImpl(env.config)), slotToCard, cardToSlot);
+        table.placeCard(5, 3);
+        long version = table.snapshot().version;
+        table.placeCards(new int[]{0, 1, 2}, new int[]{0, 1, 2}); // 0000, 0001, 0002
+        assertEquals(version + 1, table.snapshot().version); // a single change
+        assertEquals(4, table.countCards());
+        assertEquals(1, table.countSets());
+        assertEquals(2, (int) cardToSlot[2]);
+        table.placeCards(new int[0], new int[0]);
+        assertEquals(version + 1, table.snapshot().version); // nothing placed, nothing published
+
+        table.toggleToken(0, 1);
+        table.toggleToken(1, 3);
+        List<Integer> cards = table.removeAllCards();
+        assertEquals(4, cards.size());
+        assertTrue(cards.containsAll(Arrays.asList(0, 1, 2, 5)));
+        assertEquals(0, table.countCards());
+        assertEquals(0, table.countSets());
+        assertEquals(0, table.getTokensNumberByPlayer(0));
+        assertEquals(0, table.getTokensPerSlot(3).size());
+        assertEquals(0, table.snapshot().countTokens(1));
+        assertEquals(-1, table.snapshot().card(3));
+    }
+
+    private Table delayedTable(Util util) {
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("TableDelaySeconds", "0.05");
+        properties.put("PlayerKeys1", "81,87,69,82");
+        properties.put("PlayerKeys2", "85,73,79,80");
+        Config config = new Config(env.logger, properties);
+        return new Table(new Env(env.logger, config, env.ui, util), slotToCard, cardToSlot);
+    }
+
+    @Test
+    void placeCard_TokensOnlyOnShownCards() throws InterruptedException {
+        table = delayedTable(new MockUtil());
+        table.startPresentation();
+        try {
+            table.placeCard(3, 0);
+            table.placeCard(4, 1);
+            assertEquals(2, table.countCards()); // the cards are on the table at once
+            assertFalse(table.isShown(1));
+            assertFalse(table.toggleToken(0, 1));
+            for (int i = 0; i < 100 && !table.isShown(1); ++i)
+                Thread.sleep(10);
+            assertTrue(table.isShown(0));
+            assertTrue(table.isShown(1));
+            assertTrue(table.toggleToken(0, 1));
+        } finally {
+            table.stopPresentation();
+        }
+    }
+
+    @Test
+    void placeCard_NotShownUntilPresented() throws InterruptedException {
+        Table[] tables = new Table[1];
+        boolean[] shownWhenPublished = {true};
+        tables[0] = delayedTable(new MockUtil() {
+            @Override
+            public int findSetsWith(int card, int[] cards, int len, SetSink sink) {
+                // called while the card is placed, after it is in the table's mappings
+                shownWhenPublished[0] = tables[0].isShown(cardToSlot[card]);
+                return 0;
+            }
+        });
+        table = tables[0];
+
+        table.placeCard(3, 0);
+        assertFalse(shownWhenPublished[0]);
+        Thread.sleep(100); // longer than the table delay, but there is no presenter yet
+        assertFalse(table.isShown(0));
+        assertFalse(table.toggleToken(0, 0));
+
+        table.startPresentation();
+        try {
+            for (int i = 0; i < 100 && !table.isShown(0); ++i)
+                Thread.sleep(10);
+            assertTrue(table.isShown(0));
+        } finally {
+            table.stopPresentation();
+        }
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
@@ -143,6 +308,16 @@ class TableTest {
             return null;
         }
 
+        @Override
+        public int findSets(int[] cards, int len, int count, SetSink sink) {
+            return 0;
+        }
+
+        @Override
+        public int findSetsWith(int card, int[] cards, int len, SetSink sink) {
+            return 0;
+        }
+
         @Override
         public void spin() {}
     }
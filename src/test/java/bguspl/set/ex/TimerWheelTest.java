@@ -0,0 +1,81 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    private static final long START = 1_000_000;
+
+    @Test
+    void advance_ExpiresDueDeadlinesInOrder() {
+        TimerWheel wheel = new TimerWheel(3, START);
+        wheel.schedule(0, START + 5000);
+        wheel.schedule(1, START + 10);
+        wheel.schedule(2, START + 300);
+
+        List<Integer> expired = new ArrayList<>();
+        wheel.advance(START + 299, expired::add);
+        assertEquals(Arrays.asList(1), expired);
+        wheel.advance(START + 5000, expired::add);
+        assertEquals(Arrays.asList(1, 2, 0), expired);
+        assertFalse(wheel.isScheduled(0));
+        assertEquals(Long.MAX_VALUE, wheel.nextDeadline());
+    }
+
+    @Test
+    void cancel_DeadlineDoesNotExpire() {
+        TimerWheel wheel = new TimerWheel(2, START);
+        wheel.schedule(0, START + 100);
+        wheel.schedule(1, START + 200);
+        wheel.cancel(0);
+        assertTrue(wheel.isScheduled(1));
+
+        List<Integer> expired = new ArrayList<>();
+        wheel.advance(START + 1000, expired::add);
+        assertEquals(Arrays.asList(1), expired);
+    }
+
+    @Test
+    void advance_SameAsSortedDeadlines() {
+        Random random = new Random(7);
+        int keys = 200;
+        TimerWheel wheel = new TimerWheel(keys, START);
+        long[] deadline = new long[keys];
+        long now = START;
+        for (int round = 0; round < 50; ++round) {
+            for (int key = 0; key < keys; ++key)
+                if (!wheel.isScheduled(key) && random.nextInt(3) == 0) {
+                    deadline[key] = now + random.nextInt(300_000);
+                    wheel.schedule(key, deadline[key]);
+                }
+            // never later than the first deadline
+            long next = wheel.nextDeadline();
+            for (int key = 0; key < keys; ++key)
+                if (wheel.isScheduled(key))
+                    assertTrue(next <= deadline[key]);
+
+            long until = now + random.nextInt(20_000);
+            List<Integer> expired = new ArrayList<>();
+            wheel.advance(until, expired::add);
+            long last = Long.MIN_VALUE;
+            for (int key : expired) {
+                assertTrue(deadline[key] <= until);
+                assertTrue(deadline[key] >= last);
+                last = deadline[key];
+            }
+            for (int key = 0; key < keys; ++key)
+                if (wheel.isScheduled(key))
+                    assertTrue(deadline[key] > until);
+            now = until;
+        }
+    }
+}